@@ -20,4 +20,14 @@ package org.musigma.logging;
  */
 public interface Logger {
     void log(CharSequence msg);
+
+    /**
+     * Logs a message, optionally marking it as durable: appenders force a durable message (and everything logged
+     * before it) to the storage device right away instead of waiting for their
+     * {@linkplain org.musigma.logging.appender.FlushPolicy flush policy}. Loggers that don't support durable
+     * messages log them like any other message.
+     */
+    default void log(CharSequence msg, boolean durable) {
+        log(msg);
+    }
 }
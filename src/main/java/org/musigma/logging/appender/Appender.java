@@ -25,4 +25,12 @@ import java.util.function.Consumer;
  * ByteBuffer which is written to something.
  */
 public interface Appender extends Consumer<LogEvent>, AutoCloseable, Flushable {
+
+    /**
+     * Indicates that the caller has finished handing over a batch of events. Buffering appenders should use this to
+     * write out what they have buffered so far in one go instead of waiting for their buffer to fill up. Unlike
+     * {@link #flush()}, this does not need to force anything to the storage device.
+     */
+    default void endBatch() {
+    }
 }
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2017 Matt Sicker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.musigma.logging.appender;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Post-processes the archives of rolling appenders: compresses them with gzip and deletes old archives according to
+ * the retention limits of their {@link RolloverPolicy}. The work happens on a small pool of low priority daemon
+ * threads shared by all appenders, so neither logging nor rolling over ever waits for it.
+ *
+ * <p>When archives are compressed, only compressed archives count towards retention. If the pool falls behind by more
+ * than its queue capacity, further archives are left as they are and retention isn't enforced for their rollover;
+ * when compressing, such archives thus stay uncompressed and are never counted for retention or deleted by it.</p>
+ *
+ * <p>Compression streams the archive through a {@link FileChannel} and a {@link Deflater}, writing to a temporary
+ * file that replaces the archive once complete, so a crash never leaves a truncated {@code .gz} file behind.</p>
+ */
+public final class ArchiveProcessor {
+
+    static final String GZIP_EXTENSION = ".gz";
+    static final String TEMP_EXTENSION = ".tmp";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final ArchiveProcessor DEFAULT = new ArchiveProcessor(1, 1024);
+
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * @param threads       number of worker threads
+     * @param queueCapacity number of archives that may wait for processing
+     */
+    private ArchiveProcessor(int threads, int queueCapacity) {
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity), r -> {
+            Thread thread = new Thread(r, "ArchiveProcessor");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    public static ArchiveProcessor getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Schedules a freshly rolled archive to be processed.
+     *
+     * @param archive  the archive that was just rolled
+     * @param policy   the policy of the rolling appender
+     * @param archives matches all archives of the rolling appender, compressed or not
+     */
+    void submit(Path archive, RolloverPolicy policy, DirectoryStream.Filter<Path> archives) {
+        if (!policy.isCompressed() && !policy.hasRetention()) {
+            return;
+        }
+        try {
+            executor.execute(() -> process(archive, policy, archives));
+        } catch (RejectedExecutionException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void process(Path archive, RolloverPolicy policy, DirectoryStream.Filter<Path> archives) {
+        try {
+            if (policy.isCompressed()) {
+                gzip(archive);
+            }
+            if (policy.hasRetention()) {
+                enforceRetention(archive.getParent(), archives, policy.isCompressed(), policy.getMaxFiles(),
+                    policy.getMaxTotalBytes());
+            }
+        } catch (NoSuchFileException ignored) {
+            // already deleted by retention
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void gzip(Path source) throws IOException {
+        Path target = source.resolveSibling(source.getFileName() + GZIP_EXTENSION);
+        Path temp = source.resolveSibling(target.getFileName() + TEMP_EXTENSION);
+        FileTime modified = Files.getLastModifiedTime(source);
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        CRC32 crc = new CRC32();
+        // Deflater only works with arrays before Java 11
+        ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+        ByteBuffer out = ByteBuffer.allocate(BUFFER_SIZE);
+        boolean done = false;
+        try (FileChannel src = FileChannel.open(source, READ);
+             FileChannel dst = FileChannel.open(temp, WRITE, CREATE, TRUNCATE_EXISTING)) {
+            Gzip.putHeader(out);
+            long length = 0;
+            int read;
+            while ((read = src.read(in)) >= 0) {
+                if (read == 0) {
+                    continue;
+                }
+                crc.update(in.array(), 0, in.position());
+                length += in.position();
+                deflater.setInput(in.array(), 0, in.position());
+                while (!deflater.needsInput()) {
+                    deflate(deflater, out, dst);
+                }
+                in.clear();
+            }
+            deflater.finish();
+            while (!deflater.finished()) {
+                deflate(deflater, out, dst);
+            }
+            if (out.remaining() < Gzip.TRAILER_SIZE) {
+                write(out, dst);
+            }
+            Gzip.putTrailer(out, crc.getValue(), length);
+            write(out, dst);
+            dst.force(true);
+            done = true;
+        } finally {
+            deflater.end();
+            if (!done) {
+                Files.deleteIfExists(temp);
+            }
+        }
+        Files.setLastModifiedTime(temp, modified);
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        Files.delete(source);
+    }
+
+    private static void deflate(Deflater deflater, ByteBuffer out, FileChannel dst) throws IOException {
+        int length = deflater.deflate(out.array(), out.position(), out.remaining());
+        out.position(out.position() + length);
+        if (!out.hasRemaining()) {
+            write(out, dst);
+        }
+    }
+
+    private static void write(ByteBuffer out, FileChannel dst) throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            dst.write(out);
+        }
+        out.clear();
+    }
+
+    /**
+     * Deletes the oldest archives until at most the given number of archives with at most the given total size are
+     * left. Limits of zero or less are ignored. When compressing, uncompressed archives (waiting to be compressed or
+     * skipped) are left alone.
+     */
+    private static void enforceRetention(Path directory, DirectoryStream.Filter<Path> filter, boolean compressedOnly,
+                                         int maxFiles, long maxTotalBytes) throws IOException {
+        List<Archive> archives = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, filter)) {
+            for (Path path : stream) {
+                if (compressedOnly && !path.getFileName().toString().endsWith(GZIP_EXTENSION)) {
+                    continue;
+                }
+                try {
+                    archives.add(new Archive(path, Files.getLastModifiedTime(path).toMillis(), Files.size(path)));
+                } catch (NoSuchFileException ignored) {
+                    // compressed in the meantime
+                }
+            }
+        }
+        // newest first
+        archives.sort(Comparator.comparingLong((Archive archive) -> archive.modified).reversed());
+        long totalBytes = 0;
+        for (int i = 0; i < archives.size(); i++) {
+            Archive archive = archives.get(i);
+            totalBytes += archive.size;
+            if ((maxFiles > 0 && i >= maxFiles) || (maxTotalBytes > 0 && totalBytes > maxTotalBytes)) {
+                Files.deleteIfExists(archive.path);
+            }
+        }
+    }
+
+    private static final class Archive {
+        private final Path path;
+        private final long modified;
+        private final long size;
+
+        private Archive(Path path, long modified, long size) {
+            this.path = path;
+            this.modified = modified;
+            this.size = size;
+        }
+    }
+}
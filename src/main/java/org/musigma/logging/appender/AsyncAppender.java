@@ -16,76 +16,331 @@
 package org.musigma.logging.appender;
 
 import org.musigma.logging.impl.LogEvent;
+import org.musigma.logging.impl.MutableLogEvent;
+import org.musigma.logging.util.RingBuffer;
+import org.musigma.logging.util.Sequence;
+import org.musigma.logging.util.TimedParkWaitStrategy;
+import org.musigma.logging.util.WaitStrategy;
 
 import java.io.IOException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.LinkedTransferQueue;
-import java.util.concurrent.TransferQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 
 /**
+ * Appender that hands off events to a background thread through a {@link RingBuffer}. Every slot holds a preallocated
+ * {@link MutableLogEvent} that producers copy their event into, so producers only pay for a CAS and a slot copy and
+ * never allocate. The consumer drains everything available in one pass and then calls {@link Appender#endBatch()} on
+ * the delegate so that a burst of events turns into a single write.
  *
+ * <p>The delegate appender receives events from the consumer thread only, except with
+ * {@link OverflowPolicy#SYNCHRONOUS}, where producers facing a full queue call it themselves (holding a lock shared
+ * with the consumer). With {@link OverflowPolicy#DROP_OLDEST}, producers take the oldest events off the queue, but
+ * never pass them to the delegate. The delegate must still be thread safe: {@link #flush()} calls it on the flushing
+ * thread, and its own linger and interval timers (see {@link LingerFlushScheduler} and {@link FlushPolicy}) call its
+ * {@code endBatch()} and {@code flush()} from their timer threads. All file appenders in this package are.</p>
+ *
+ * <p>When the queue is full, the configured {@link OverflowPolicy} decides what happens to the event. Every full queue
+ * encountered is counted in {@link #getOverflowCount()}, and every event discarded because of it is counted in
+ * {@link #getDroppedCount()}. While the queue is empty, the consumer waits according to the configured
+ * {@link WaitStrategy}. Each appender needs its own wait strategy instance.</p>
+ *
+ * <p>{@linkplain LogEvent#isDurable() Durable} events are the exception to producers not waiting for the consumer:
+ * logging one returns only once the consumer has handed it (and everything queued before it) to the delegate, which
+ * forces it according to its {@link FlushPolicy}. A durable event discarded by a drop policy is not waited for.</p>
  */
 public class AsyncAppender implements Appender {
 
-    private final TransferQueue<LogEvent> queue = new LinkedTransferQueue<>();
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 100;
+
+    private final Appender delegate;
+    private final RingBuffer<MutableLogEvent> queue;
+    private final Consumer<MutableLogEvent> handler;
+    private final OverflowPolicy overflowPolicy;
+    private final WaitStrategy waitStrategy;
     private final ExecutorService executorService = Executors.newSingleThreadExecutor();
     private final Future<?> consumer;
+    private volatile boolean closed;
+    // everything before this sequence has been handed to the delegate (or dropped)
+    private final Sequence completed = new Sequence(0);
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final AtomicInteger blockedProducers = new AtomicInteger();
+    // serializes calls to the delegate between the consumer and producers; only needed for SYNCHRONOUS
+    private final ReentrantLock delegateLock;
+
+    private final LongAdder overflowCount = new LongAdder();
+    private final LongAdder droppedCount = new LongAdder();
 
     public AsyncAppender(Appender delegate) {
-        consumer = executorService.submit(new LogEventConsumer(delegate, queue));
+        this(delegate, DEFAULT_CAPACITY);
+    }
+
+    public AsyncAppender(Appender delegate, int capacity) {
+        this(delegate, capacity, OverflowPolicy.BLOCK);
+    }
+
+    public AsyncAppender(Appender delegate, int capacity, OverflowPolicy overflowPolicy) {
+        this(delegate, capacity, overflowPolicy, new TimedParkWaitStrategy());
+    }
+
+    public AsyncAppender(Appender delegate, int capacity, OverflowPolicy overflowPolicy, WaitStrategy waitStrategy) {
+        this.delegate = delegate;
+        this.overflowPolicy = overflowPolicy;
+        this.waitStrategy = waitStrategy;
+        this.delegateLock = overflowPolicy == OverflowPolicy.SYNCHRONOUS ? new ReentrantLock() : null;
+        queue = new RingBuffer<>(capacity, MutableLogEvent::new);
+        handler = event -> {
+            try {
+                delegate.accept(event);
+            } finally {
+                event.clear();
+            }
+        };
+        consumer = executorService.submit(new LogEventConsumer());
     }
 
     @Override
     public void accept(LogEvent event) {
+        if (!offer(event)) {
+            overflow(event);
+        }
+        waitStrategy.signal();
+        if (event.isDurable()) {
+            // the delegate forces durable events as it gets them
+            awaitCompleted(queue.producerSequence());
+        }
+    }
+
+    private void overflow(LogEvent event) {
+        overflowCount.increment();
+        switch (overflowPolicy) {
+            case BLOCK:
+                block(event);
+                break;
+            case SPIN_THEN_PARK:
+                spinThenPark(event);
+                break;
+            case DROP_NEWEST:
+                droppedCount.increment();
+                break;
+            case DROP_OLDEST:
+                do {
+                    if (queue.poll() != null) {
+                        droppedCount.increment();
+                    }
+                } while (!offer(event));
+                break;
+            case SYNCHRONOUS:
+                delegateLock.lock();
+                try {
+                    delegate.accept(event);
+                } finally {
+                    delegateLock.unlock();
+                }
+                break;
+        }
+    }
+
+    private boolean offer(LogEvent event) {
+        long sequence = queue.tryClaim();
+        if (sequence < 0) {
+            return false;
+        }
+        queue.get(sequence).copyFrom(event);
+        queue.publish(sequence);
+        return true;
+    }
+
+    private void block(LogEvent event) {
+        lock.lock();
+        blockedProducers.incrementAndGet();
         try {
-            queue.transfer(event);
+            while (!offer(event)) {
+                if (consumer.isDone()) {
+                    droppedCount.increment();
+                    return;
+                }
+                // the timeout covers a consumer that checked for blocked producers just before we registered
+                notFull.awaitNanos(PARK_NANOS);
+            }
         } catch (InterruptedException e) {
             e.printStackTrace();
+            droppedCount.increment();
             Thread.currentThread().interrupt();
+        } finally {
+            blockedProducers.decrementAndGet();
+            lock.unlock();
+        }
+    }
+
+    private void spinThenPark(LogEvent event) {
+        int tries = 0;
+        while (!offer(event)) {
+            if (tries < SPIN_TRIES) {
+                tries++;
+            } else if (tries < SPIN_TRIES + YIELD_TRIES) {
+                tries++;
+                Thread.yield();
+            } else if (consumer.isDone()) {
+                droppedCount.increment();
+                return;
+            } else {
+                LockSupport.parkNanos(this, PARK_NANOS);
+            }
         }
     }
 
+    /**
+     * Returns how many times an event found the queue full.
+     */
+    public long getOverflowCount() {
+        return overflowCount.sum();
+    }
+
+    /**
+     * Returns how many events were discarded because the queue was full.
+     */
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    /**
+     * Waits until the consumer has handed everything logged so far to the delegate and then flushes the delegate.
+     */
     @Override
     public void flush() throws IOException {
-        // nothing to do
+        awaitCompleted(queue.producerSequence());
+        if (delegateLock == null) {
+            delegate.flush();
+            return;
+        }
+        delegateLock.lock();
+        try {
+            delegate.flush();
+        } finally {
+            delegateLock.unlock();
+        }
+    }
+
+    /**
+     * Waits until the consumer has handed everything before the given sequence to the delegate.
+     */
+    private void awaitCompleted(long target) {
+        while (completed.get() < target && !consumer.isDone()) {
+            LockSupport.parkNanos(this, PARK_NANOS);
+        }
     }
 
     @Override
     public void close() throws Exception {
-        consumer.cancel(true);
+        closed = true;
+        waitStrategy.signal();
         executorService.shutdown();
+        executorService.awaitTermination(1, TimeUnit.MINUTES);
     }
 
-    private static class LogEventConsumer implements Runnable {
-
-        private final Appender delegate;
-        private final TransferQueue<LogEvent> queue;
-
-        private LogEventConsumer(Appender delegate, TransferQueue<LogEvent> queue) {
-            this.delegate = delegate;
-            this.queue = queue;
-        }
+    private class LogEventConsumer implements Runnable {
 
         @Override
         public void run() {
-            while (true) {
+            int batchSize = queue.capacity();
+            BooleanSupplier cancelled = () -> closed;
+            try {
+                while (!closed) {
+                    waitStrategy.waitFor(queue, cancelled);
+                    drain(batchSize);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            boolean interrupted = Thread.interrupted(); // interruptible channels close themselves otherwise
+            try {
+                // write out anything published before we were closed
+                while (drain(batchSize)) {
+                    // keep going
+                }
+                closeDelegate();
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        private boolean drain(int batchSize) {
+            if (delegateLock == null) {
+                if (!drainBatch(batchSize)) {
+                    return false;
+                }
+            } else {
+                delegateLock.lock();
                 try {
-                    LogEvent event = queue.take();
-                    delegate.accept(event);
-                } catch (InterruptedException ie) {
-                    try {
-                        delegate.close();
-                        return;
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                        return;
-                    } finally {
-                        Thread.currentThread().interrupt();
+                    if (!drainBatch(batchSize)) {
+                        return false;
                     }
+                } finally {
+                    delegateLock.unlock();
+                }
+            }
+            completed.lazySet(queue.consumerSequence());
+            if (blockedProducers.get() > 0) {
+                lock.lock();
+                try {
+                    notFull.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+            return true;
+        }
+
+        private void closeDelegate() throws Exception {
+            if (delegateLock == null) {
+                delegate.close();
+                return;
+            }
+            delegateLock.lock();
+            try {
+                delegate.close();
+            } finally {
+                delegateLock.unlock();
+            }
+        }
+
+        /**
+         * Hands a batch to the delegate. Failures of the delegate are reported and don't stop the consumer; the rest
+         * of a batch whose event failed is discarded.
+         */
+        private boolean drainBatch(int batchSize) {
+            try {
+                if (queue.drain(handler, batchSize) == 0) {
+                    return false;
                 }
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+            try {
+                delegate.endBatch();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
             }
+            return true;
         }
     }
 }
@@ -17,6 +17,7 @@ package org.musigma.logging.appender;
 
 import org.musigma.logging.layout.Layout;
 import org.musigma.logging.impl.LogEvent;
+import org.musigma.logging.util.Buffered;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
@@ -24,20 +25,63 @@ import java.nio.ByteBuffer;
 import java.nio.channels.AsynchronousFileChannel;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Phaser;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
- * Appender based on {@link AsynchronousFileChannel}.
+ * Appender based on {@link AsynchronousFileChannel}. Events are encoded into a pool of direct buffers; each buffer is
+ * submitted as a single positional write once it is full, when it has lingered for the linger time (see
+ * {@link LingerFlushScheduler}), or on {@link #flush()}. Buffers are returned to the pool when their write completes.
+ * When every buffer is in flight, logging blocks until a write completes.
  */
-public class AsyncFileChannelAppender implements Appender {
+public class AsyncFileChannelAppender implements Appender, Buffered<ByteBuffer> {
+
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+    public static final int DEFAULT_BUFFER_COUNT = 8;
+    public static final long DEFAULT_LINGER_MILLIS = 10;
 
     private final AsynchronousFileChannel fileChannel;
     private final Layout layout;
-    private final AtomicLong nextWritablePosition = new AtomicLong();
     private final Phaser phaser = new Phaser(1); // self is interested in phases to close when done
+    private final BlockingQueue<ByteBuffer> pool;
+    private final Consumer<ByteBuffer> recycler;
+    private final LingerFlushScheduler.Registration lingerRegistration;
+    private final FlushTracker flushTracker;
+
+    // guarded by this
+    private ByteBuffer buf;
+    private long nextWritablePosition;
 
     public AsyncFileChannelAppender(Path logFile, Layout layout) {
+        this(logFile, layout, DEFAULT_BUFFER_SIZE, DEFAULT_BUFFER_COUNT, DEFAULT_LINGER_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param bufferSize  size of each pooled buffer in bytes
+     * @param bufferCount number of buffers; at most this many writes are in flight at once
+     * @param linger      how long a partially filled buffer may wait for more events before being written; zero or
+     *                    less to only write partial buffers on flush
+     */
+    public AsyncFileChannelAppender(Path logFile, Layout layout, int bufferSize, int bufferCount, long linger,
+                                    TimeUnit unit) {
+        this(logFile, layout, bufferSize, bufferCount, linger, unit, FlushPolicy.onClose());
+    }
+
+    /**
+     * @param bufferSize  size of each pooled buffer in bytes
+     * @param bufferCount number of buffers; at most this many writes are in flight at once
+     * @param linger      how long a partially filled buffer may wait for more events before being written; zero or
+     *                    less to only write partial buffers on flush
+     * @param flushPolicy when to force written data to the storage device
+     */
+    public AsyncFileChannelAppender(Path logFile, Layout layout, int bufferSize, int bufferCount, long linger,
+                                    TimeUnit unit, FlushPolicy flushPolicy) {
+        if (bufferSize <= 0 || bufferCount <= 0) {
+            throw new IllegalArgumentException("Buffer size and count must be positive");
+        }
         try {
             this.fileChannel = AsynchronousFileChannel.open(logFile, StandardOpenOption.CREATE,
                 StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
@@ -45,28 +89,102 @@ public class AsyncFileChannelAppender implements Appender {
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
+        this.pool = new ArrayBlockingQueue<>(bufferCount);
+        for (int i = 0; i < bufferCount - 1; i++) {
+            pool.add(ByteBuffer.allocateDirect(bufferSize));
+        }
+        this.buf = ByteBuffer.allocateDirect(bufferSize);
+        this.recycler = buffer -> {
+            buffer.clear();
+            pool.offer(buffer);
+        };
+        this.flushTracker = flushPolicy.newTracker(this);
+        this.lingerRegistration = linger > 0 ? LingerFlushScheduler.getDefault().register(this, linger, unit) : null;
     }
 
     @Override
-    public void accept(LogEvent event) {
-        ByteBuffer src = layout.encode(event);
-        int remaining = src.remaining();
-        long pos = nextWritablePosition.getAndAdd(remaining);
-        new FileTransferAction(phaser, src, fileChannel, pos).run();
+    public synchronized void accept(LogEvent event) {
+        long start = nextWritablePosition + buf.position();
+        layout.encode(event, this);
+        if (lingerRegistration != null) {
+            lingerRegistration.markDirty();
+        }
+        if (flushTracker.written(nextWritablePosition + buf.position() - start, event.isDurable())) {
+            try {
+                force();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
     }
 
     @Override
-    public void flush() throws IOException {
-        fileChannel.force(true);
+    public synchronized void endBatch() {
+        drainIfNotEmpty();
     }
 
     @Override
-    public void close() throws Exception {
+    public synchronized void flush() throws IOException {
+        if (flushTracker.getPolicy().isForceOnFlush()) {
+            force();
+        } else {
+            awaitWrites();
+        }
+    }
+
+    private void force() throws IOException {
+        awaitWrites();
+        fileChannel.force(flushTracker.getPolicy().isMetadata());
+        flushTracker.forced();
+    }
+
+    private void awaitWrites() {
+        drainIfNotEmpty();
+        // wait for all writes submitted so far
         phaser.arriveAndAwaitAdvance();
+    }
+
+    @Override
+    public void close() throws Exception {
+        flushTracker.close();
+        if (lingerRegistration != null) {
+            lingerRegistration.close();
+        }
         try {
             flush();
         } finally {
             fileChannel.close();
         }
     }
+
+    @Override
+    public ByteBuffer buffer() {
+        return buf;
+    }
+
+    /**
+     * Submits the current buffer and continues with the next free buffer from the pool, waiting for one if all of them
+     * are being written.
+     */
+    @Override
+    public ByteBuffer drain() {
+        buf.flip();
+        long pos = nextWritablePosition;
+        nextWritablePosition += buf.remaining();
+        new FileTransferAction(phaser, buf, fileChannel, pos, recycler).run();
+        try {
+            buf = pool.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            // don't lose the event; a spare buffer is cheaper than that
+            buf = ByteBuffer.allocateDirect(buf.capacity());
+        }
+        return buf;
+    }
+
+    private void drainIfNotEmpty() {
+        if (buf.position() > 0) {
+            drain();
+        }
+    }
 }
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2017 Matt Sicker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.musigma.logging.appender;
+
+import org.musigma.logging.util.Buffered;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Buffered {@link WritableByteChannel}, the channel counterpart of {@link java.io.BufferedOutputStream}. Layouts can
+ * encode straight into its direct buffer via {@link Buffered}, and full buffers are written to the underlying channel
+ * without being copied into a {@code byte[]} first. Like {@code BufferedOutputStream}, this class is not thread safe.
+ */
+class BufferedByteChannel implements WritableByteChannel, Buffered<ByteBuffer> {
+
+    static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buf;
+    // bytes written to the underlying channel so far
+    private long written;
+
+    BufferedByteChannel(WritableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    BufferedByteChannel(WritableByteChannel channel, int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be positive");
+        }
+        this.channel = channel;
+        this.buf = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    /**
+     * Returns the number of bytes written to this channel so far, including those still buffered.
+     */
+    long position() {
+        return written + buf.position();
+    }
+
+    /**
+     * Buffers the given bytes. Data that doesn't fit into the buffer anymore is written through to the underlying
+     * channel directly.
+     */
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        int length = src.remaining();
+        if (length <= buf.remaining()) {
+            buf.put(src);
+            return length;
+        }
+        flushBuffer();
+        if (length < buf.capacity()) {
+            buf.put(src);
+        } else {
+            writeFully(src);
+        }
+        return length;
+    }
+
+    /**
+     * Writes any buffered data to the underlying channel.
+     */
+    void flushBuffer() throws IOException {
+        if (buf.position() > 0) {
+            buf.flip();
+            try {
+                writeFully(buf);
+            } finally {
+                buf.clear();
+            }
+        }
+    }
+
+    private void writeFully(ByteBuffer src) throws IOException {
+        written += src.remaining();
+        while (src.hasRemaining()) {
+            channel.write(src);
+        }
+    }
+
+    @Override
+    public ByteBuffer buffer() {
+        return buf;
+    }
+
+    @Override
+    public ByteBuffer drain() {
+        try {
+            flushBuffer();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return buf;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2017 Matt Sicker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.musigma.logging.appender;
+
+import org.musigma.logging.impl.LogEvent;
+import org.musigma.logging.layout.Layout;
+import org.musigma.logging.util.Buffered;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Appender writing a gzip compressed file. Events are encoded into a buffer whose contents are fed to a
+ * {@link Deflater} whenever it is full; at the end of every batch (and on flush), the deflater is
+ * {@linkplain Deflater#SYNC_FLUSH sync flushed}, so everything logged so far can be decompressed from the file even
+ * while it is still being written or after a crash. Each sync flush costs a few bytes of output and resets part of the
+ * compression state, so larger batches compress better.
+ *
+ * <p>The appender keeps statistics about the compression ratio and the time spent compressing, which is essentially
+ * the CPU cost of compression, for comparing against writing uncompressed data.</p>
+ */
+public class CompressedFileChannelAppender implements Appender, Buffered<ByteBuffer> {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final FileChannel fileChannel;
+    private final Layout layout;
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    // the Deflater only works with arrays before Java 11
+    private final ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+    private final ByteBuffer out = ByteBuffer.allocate(BUFFER_SIZE);
+    private final FlushTracker flushTracker;
+    private final LingerFlushScheduler.Registration lingerRegistration;
+    // uncompressed bytes fed to the deflater so far
+    private long uncompressed;
+    // compressed bytes written to the file so far, including gzip framing
+    private long compressed;
+    private long deflateNanos;
+    // whether data was deflated since the last sync flush
+    private boolean unflushed;
+    // set once the deflater has been ended; a lingering flush may still come in afterwards
+    private boolean closed;
+
+    public CompressedFileChannelAppender(Path logFile, Layout layout) {
+        this(logFile, layout, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param level compression level from {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION}
+     */
+    public CompressedFileChannelAppender(Path logFile, Layout layout, int level) {
+        this(logFile, layout, level, FlushPolicy.onClose(), 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param level       compression level from {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION}
+     * @param flushPolicy when to force written data to the storage device
+     * @param linger      how long buffered data may linger before the {@link LingerFlushScheduler} compresses and
+     *                    writes it out; zero or less to only write it when the buffer is full or on flush
+     */
+    public CompressedFileChannelAppender(Path logFile, Layout layout, int level, FlushPolicy flushPolicy, long linger,
+                                         TimeUnit unit) {
+        this.layout = layout;
+        this.deflater = new Deflater(level, true);
+        this.flushTracker = flushPolicy.newTracker(this);
+        try {
+            this.fileChannel = FileChannel.open(logFile, WRITE, CREATE, TRUNCATE_EXISTING);
+            Gzip.putHeader(out);
+            writeOut();
+        } catch (IOException e) {
+            deflater.end();
+            throw new UncheckedIOException(e);
+        }
+        this.lingerRegistration = linger > 0 ? LingerFlushScheduler.getDefault().register(this, linger, unit) : null;
+    }
+
+    @Override
+    public synchronized void accept(LogEvent event) {
+        if (closed) {
+            return;
+        }
+        long start = uncompressed + buf.position();
+        layout.encode(event, this);
+        if (lingerRegistration != null) {
+            lingerRegistration.markDirty();
+        }
+        if (flushTracker.written(uncompressed + buf.position() - start, event.isDurable())) {
+            try {
+                force();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void endBatch() {
+        if (closed) {
+            return;
+        }
+        try {
+            syncFlush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        if (closed) {
+            return;
+        }
+        if (flushTracker.getPolicy().isForceOnFlush()) {
+            force();
+        } else {
+            syncFlush();
+        }
+    }
+
+    private void force() throws IOException {
+        syncFlush();
+        fileChannel.force(flushTracker.getPolicy().isMetadata());
+        flushTracker.forced();
+    }
+
+    /**
+     * Compresses the buffered data and ends the current deflate block on a byte boundary, then writes everything out.
+     */
+    private void syncFlush() throws IOException {
+        deflateBuffer();
+        if (unflushed) {
+            deflate(Deflater.SYNC_FLUSH);
+            unflushed = false;
+        }
+        writeOut();
+    }
+
+    @Override
+    public synchronized void close() throws Exception {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        flushTracker.close();
+        if (lingerRegistration != null) {
+            lingerRegistration.close();
+        }
+        try {
+            deflateBuffer();
+            deflater.finish();
+            while (!deflater.finished()) {
+                deflateInto(Deflater.NO_FLUSH);
+            }
+            if (out.remaining() < Gzip.TRAILER_SIZE) {
+                writeOut();
+            }
+            Gzip.putTrailer(out, crc.getValue(), uncompressed);
+            writeOut();
+            if (flushTracker.getPolicy().isForceOnFlush()) {
+                fileChannel.force(flushTracker.getPolicy().isMetadata());
+            }
+        } finally {
+            unflushed = false;
+            deflater.end();
+            fileChannel.close();
+        }
+    }
+
+    @Override
+    public ByteBuffer buffer() {
+        return buf;
+    }
+
+    @Override
+    public ByteBuffer drain() {
+        try {
+            deflateBuffer();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return buf;
+    }
+
+    private void deflateBuffer() throws IOException {
+        int length = buf.position();
+        if (length == 0) {
+            return;
+        }
+        crc.update(buf.array(), 0, length);
+        uncompressed += length;
+        deflater.setInput(buf.array(), 0, length);
+        deflate(Deflater.NO_FLUSH);
+        buf.clear();
+        unflushed = true;
+    }
+
+    private void deflate(int flush) throws IOException {
+        if (flush == Deflater.NO_FLUSH) {
+            while (!deflater.needsInput()) {
+                deflateInto(flush);
+            }
+        } else {
+            // the flush is complete once the deflater no longer fills up the output buffer
+            while (!deflateInto(flush)) {
+            }
+        }
+    }
+
+    /**
+     * Runs the deflater into the output buffer, writing the buffer out if it gets full.
+     *
+     * @return whether the deflater left room in the output buffer
+     */
+    private boolean deflateInto(int flush) throws IOException {
+        long start = System.nanoTime();
+        int length = deflater.deflate(out.array(), out.position(), out.remaining(), flush);
+        deflateNanos += System.nanoTime() - start;
+        out.position(out.position() + length);
+        if (out.hasRemaining()) {
+            return true;
+        }
+        writeOut();
+        return false;
+    }
+
+    private void writeOut() throws IOException {
+        out.flip();
+        compressed += out.remaining();
+        while (out.hasRemaining()) {
+            fileChannel.write(out);
+        }
+        out.clear();
+    }
+
+    /**
+     * Returns the number of bytes encoded so far, excluding those still waiting in the buffer.
+     */
+    public synchronized long getUncompressedBytes() {
+        return uncompressed;
+    }
+
+    /**
+     * Returns the number of bytes written to the file so far.
+     */
+    public synchronized long getCompressedBytes() {
+        return compressed;
+    }
+
+    /**
+     * Returns the ratio of uncompressed to compressed bytes so far; data still held by the deflater makes this
+     * somewhat optimistic until the next flush.
+     */
+    public synchronized double getCompressionRatio() {
+        return compressed == 0 ? 0 : (double) uncompressed / compressed;
+    }
+
+    /**
+     * Returns the total time spent in the deflater so far, in nanoseconds.
+     */
+    public synchronized long getCompressionNanos() {
+        return deflateNanos;
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2017 Matt Sicker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.musigma.logging.appender;
+
+import org.musigma.logging.impl.LogEvent;
+import org.musigma.logging.layout.Layout;
+import org.musigma.logging.util.Unsafe;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Appender using {@linkplain MappedByteBuffer memory mapped files} that lets producers write in parallel. Each thread
+ * encodes events into its own buffer, claims a byte range in the current mapped window with an atomic add, and copies
+ * the event into its range.
+ *
+ * <p>There is no lock for rolling over to the next window: the one producer whose claim crosses the end of the window
+ * maps the next window, writes the part of its event that fits into the old window, and reserves the rest at the start
+ * of the new one. Producers whose claims start past the end of the window wait for the new window and claim again.
+ * A window gets unmapped by whichever producer completes its last byte.</p>
+ *
+ * <p>On close, the current window is sealed so no further claims succeed, in-progress copies are waited for (including
+ * those still finishing the previous window), and the file is truncated to the end of the written data. Events logged
+ * concurrently with closing may be dropped.</p>
+ */
+public class ConcurrentMemoryMappedFileAppender implements Appender {
+
+    // added to a window's claim counter to seal it; no claim can start below capacity afterwards
+    private static final long SEALED = Long.MAX_VALUE / 2;
+
+    private final FileChannel fileChannel;
+    private final Layout layout;
+    // length of each mapped file region
+    private final int capacity;
+    private final ThreadLocal<GrowableBuffer> bufferLocal = ThreadLocal.withInitial(GrowableBuffer::new);
+    private final FlushTracker flushTracker;
+    private volatile Window current;
+    private volatile boolean closed;
+    // set when mapping the next window failed; nothing can be written anymore then
+    private volatile boolean failed;
+    // windows that haven't been completely written yet, including the current one
+    private final AtomicInteger unfinishedWindows = new AtomicInteger();
+
+    public ConcurrentMemoryMappedFileAppender(Path logFile, Layout layout, int capacity) {
+        this(logFile, layout, capacity, FlushPolicy.onClose());
+    }
+
+    public ConcurrentMemoryMappedFileAppender(Path logFile, Layout layout, int capacity, FlushPolicy flushPolicy) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.layout = layout;
+        this.capacity = capacity;
+        this.flushTracker = flushPolicy.newTracker(this);
+        try {
+            this.fileChannel = FileChannel.open(logFile, READ, WRITE, CREATE, TRUNCATE_EXISTING);
+            this.current = map(0, capacity, 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Window map(long position, int length, int reserved) throws IOException {
+        MappedByteBuffer buf = fileChannel.map(READ_WRITE, position, length);
+        unfinishedWindows.incrementAndGet();
+        return new Window(buf, position, reserved, unfinishedWindows);
+    }
+
+    @Override
+    public void accept(LogEvent event) {
+        GrowableBuffer eventBuffer = bufferLocal.get();
+        eventBuffer.reset();
+        layout.encode(event, eventBuffer);
+        ByteBuffer src = eventBuffer.buffer();
+        src.flip();
+        int length = src.remaining();
+        if (length == 0) {
+            return;
+        }
+        if (!write(src) || !flushTracker.written(length, event.isDurable())) {
+            return;
+        }
+        try {
+            force();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private boolean write(ByteBuffer src) {
+        int length = src.remaining();
+        Window window = current;
+        while (true) {
+            long start = window.claimed.getAndAdd(length);
+            int windowCapacity = window.buf.capacity();
+            if (start + length <= windowCapacity) {
+                window.write((int) start, src);
+                return true;
+            }
+            if (start <= windowCapacity) {
+                return rollOver(window, (int) start, src);
+            }
+            // someone else is rolling over to the next window
+            Window next;
+            while ((next = current) == window) {
+                if (closed || failed) {
+                    return false;
+                }
+                Thread.yield();
+            }
+            window = next;
+        }
+    }
+
+    private boolean rollOver(Window window, int start, ByteBuffer src) {
+        int head = window.buf.capacity() - start;
+        int tail = src.remaining() - head;
+        Window next;
+        try {
+            next = map(window.position + window.buf.capacity(), Math.max(capacity, tail), tail);
+        } catch (IOException e) {
+            e.printStackTrace();
+            failed = true;
+            return false;
+        }
+        current = next;
+        ByteBuffer tailSrc = src.duplicate();
+        tailSrc.position(src.position() + head);
+        next.write(0, tailSrc);
+        if (head > 0) {
+            src.limit(src.position() + head);
+            window.write(start, src);
+        }
+        return true;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (flushTracker.getPolicy().isForceOnFlush()) {
+            force();
+        }
+    }
+
+    private void force() throws IOException {
+        // forcing the channel also covers the dirty pages of the mapped windows (and unlike MappedByteBuffer.force,
+        // it can't race with a window getting unmapped)
+        fileChannel.force(flushTracker.getPolicy().isMetadata());
+        flushTracker.forced();
+    }
+
+    @Override
+    public void close() throws Exception {
+        flushTracker.close();
+        closed = true;
+        try {
+            Window window = current;
+            long end;
+            while ((end = window.claimed.getAndAdd(SEALED)) > window.buf.capacity()) {
+                // a producer crossed the end of this window and is about to publish the next one
+                Window next;
+                while ((next = current) == window && !failed) {
+                    Thread.yield();
+                }
+                if (next == window) {
+                    return;
+                }
+                window = next;
+            }
+            while (window.completed.get() < end) {
+                Thread.yield();
+            }
+            // a producer that rolled over to this window may still be copying the head of its event into the previous
+            // window, which is done once only this window (if not full) is left unfinished
+            int current = end < window.buf.capacity() ? 1 : 0;
+            while (unfinishedWindows.get() > current) {
+                Thread.yield();
+            }
+            if (end < window.buf.capacity()) {
+                // a full window gets unmapped by its last writer instead
+                Unsafe.unmap(window.buf);
+            }
+            fileChannel.truncate(window.position + end);
+            flush();
+        } finally {
+            fileChannel.close();
+        }
+    }
+
+    private static final class Window {
+        private final MappedByteBuffer buf;
+        // file offset of this window
+        private final long position;
+        // bytes claimed by producers, may go beyond the window capacity
+        private final AtomicLong claimed;
+        // bytes copied into the window so far
+        private final AtomicLong completed = new AtomicLong();
+        private final AtomicInteger unfinishedWindows;
+
+        private Window(MappedByteBuffer buf, long position, int reserved, AtomicInteger unfinishedWindows) {
+            this.buf = buf;
+            this.position = position;
+            this.claimed = new AtomicLong(reserved);
+            this.unfinishedWindows = unfinishedWindows;
+        }
+
+        private void write(int index, ByteBuffer src) {
+            int length = src.remaining();
+            try {
+                ByteBuffer dst = buf.duplicate();
+                dst.position(index);
+                dst.put(src);
+            } finally {
+                if (completed.addAndGet(length) == buf.capacity()) {
+                    Unsafe.unmap(buf);
+                    unfinishedWindows.decrementAndGet();
+                }
+            }
+        }
+    }
+}
@@ -24,43 +24,264 @@ import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static java.nio.file.StandardOpenOption.*;
 
 /**
- * Simple appender using {@link FileChannel}.
+ * Simple appender using {@link FileChannel}. Data gets forced to the storage device according to a
+ * {@link FlushPolicy}. Events are buffered until the buffer is full unless a linger time is configured.
+ *
+ * <p>In gathering mode, the appender keeps several segment buffers. A layout that fills one segment simply continues
+ * in the next, and the segments are only written once all of them are full (or at the end of a batch) with a single
+ * gathering {@link FileChannel#write(ByteBuffer[], int, int) write}. Large events and batches thus cost one system
+ * call per batch instead of one per buffer. An event that turns out to be larger than a segment continues in spill
+ * buffers of its own, which are written right after it together with the segments, so large events don't get chopped
+ * into segment sized writes. Already encoded data passed to {@link #append(ByteBuffer)} is written together with the
+ * segments without being copied into them.</p>
+ *
+ * <p>With a {@link RolloverPolicy}, the appender rolls over to a new file, which is opened ahead of time in the
+ * background (see {@link FileRoller}). Buffered data is written to the old file before switching.</p>
  */
 public class FileChannelAppender implements Appender, Buffered<ByteBuffer> {
 
-    private final FileChannel fileChannel;
+    private static final int SEGMENT_SIZE = 8192;
+    private static final int SPILL_SIZE = 64 * 1024;
+    // spill buffers beyond this many are dropped again after a huge event
+    private static final int MAX_RETAINED_SPILLS = 4;
+
     private final Layout layout;
-    private final ByteBuffer buf = ByteBuffer.allocateDirect(8192);
+    private final ByteBuffer[] segments;
+    // spill buffers of a large event; only used in gathering mode
+    private final List<ByteBuffer> spills = new ArrayList<>();
+    // filled segments and spill buffers in write order, plus room for an appended payload
+    private ByteBuffer[] gather;
+    private final FlushTracker flushTracker;
+    private final LingerFlushScheduler.Registration lingerRegistration;
+    private final FileRoller<FileChannel> roller;
+    private FileChannel fileChannel;
+    // value of position() when the current file was started
+    private long fileStart;
+    // bytes drained so far, for measuring the size of events
+    private long drained;
+    // segment being filled, and bytes in the segments before it
+    private int segment;
+    private long pending;
+    private ByteBuffer buf;
+    // value of position() when the event being encoded started, or -1 outside of accept
+    private long eventStart = -1;
+    // number of spill buffers in use by the event being encoded
+    private int spilled;
 
     public FileChannelAppender(Path logFile, Layout layout) {
+        this(logFile, layout, FlushPolicy.onClose());
+    }
+
+    public FileChannelAppender(Path logFile, Layout layout, FlushPolicy flushPolicy) {
+        this(logFile, layout, flushPolicy, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param flushPolicy when to force written data to the storage device
+     * @param linger      how long buffered data may linger before the {@link LingerFlushScheduler} writes it out; zero
+     *                    or less to only write it when the buffer is full or on flush
+     */
+    public FileChannelAppender(Path logFile, Layout layout, FlushPolicy flushPolicy, long linger, TimeUnit unit) {
+        this(logFile, layout, flushPolicy, linger, unit, 1);
+    }
+
+    /**
+     * @param flushPolicy    when to force written data to the storage device
+     * @param rolloverPolicy when to roll over to a new file; an existing log file is archived first
+     */
+    public FileChannelAppender(Path logFile, Layout layout, FlushPolicy flushPolicy, RolloverPolicy rolloverPolicy) {
+        this(logFile, layout, flushPolicy, 0, TimeUnit.MILLISECONDS, 1, rolloverPolicy);
+    }
+
+    /**
+     * @param flushPolicy    when to force written data to the storage device
+     * @param linger         how long buffered data may linger before the {@link LingerFlushScheduler} writes it out;
+     *                       zero or less to only write it when the buffer is full or on flush
+     * @param gatherSegments number of 8 KiB segment buffers to fill before writing them with one gathering write; 1 to
+     *                       write a single buffer whenever it is full
+     */
+    public FileChannelAppender(Path logFile, Layout layout, FlushPolicy flushPolicy, long linger, TimeUnit unit,
+                               int gatherSegments) {
+        this(logFile, layout, flushPolicy, linger, unit, gatherSegments, null);
+    }
+
+    /**
+     * @param flushPolicy    when to force written data to the storage device
+     * @param linger         how long buffered data may linger before the {@link LingerFlushScheduler} writes it out;
+     *                       zero or less to only write it when the buffer is full or on flush
+     * @param gatherSegments number of 8 KiB segment buffers to fill before writing them with one gathering write; 1 to
+     *                       write a single buffer whenever it is full
+     * @param rolloverPolicy when to roll over to a new file, or {@code null} to always write to the same file; when
+     *                       rolling, an existing log file is archived instead of being replaced
+     */
+    public FileChannelAppender(Path logFile, Layout layout, FlushPolicy flushPolicy, long linger, TimeUnit unit,
+                               int gatherSegments, RolloverPolicy rolloverPolicy) {
+        if (gatherSegments <= 0) {
+            throw new IllegalArgumentException("Must use at least one segment");
+        }
+        this.segments = new ByteBuffer[gatherSegments];
+        for (int i = 0; i < gatherSegments; i++) {
+            segments[i] = ByteBuffer.allocateDirect(SEGMENT_SIZE);
+        }
+        this.gather = new ByteBuffer[gatherSegments + 1];
+        this.buf = segments[0];
+        this.layout = layout;
+        this.flushTracker = flushPolicy.newTracker(this);
         try {
-            this.fileChannel = FileChannel.open(logFile, WRITE, CREATE, TRUNCATE_EXISTING);
-            this.layout = layout;
+            if (rolloverPolicy != null) {
+                this.roller = new FileRoller<>(logFile, rolloverPolicy, FileChannelAppender::open, this::closeRolled);
+                roller.archiveActive();
+                roller.start();
+            } else {
+                this.roller = null;
+            }
+            this.fileChannel = open(logFile);
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
+        this.lingerRegistration = linger > 0 ? LingerFlushScheduler.getDefault().register(this, linger, unit) : null;
+    }
+
+    private static FileChannel open(Path logFile) throws IOException {
+        return FileChannel.open(logFile, WRITE, CREATE, TRUNCATE_EXISTING);
+    }
+
+    private void closeRolled(FileChannel rolled) throws IOException {
+        try {
+            if (flushTracker.getPolicy().isForceOnFlush()) {
+                rolled.force(flushTracker.getPolicy().isMetadata());
+            }
+        } finally {
+            rolled.close();
+        }
     }
 
     @Override
     public synchronized void accept(LogEvent event) {
-        layout.encode(event, this);
+        rollIfNeeded(event.getTimestamp());
+        long start = position();
+        eventStart = start;
+        try {
+            layout.encode(event, this);
+        } finally {
+            eventStart = -1;
+        }
+        if (spilled > 0) {
+            try {
+                writeSegments(null);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        } else if (lingerRegistration != null) {
+            lingerRegistration.markDirty();
+        }
+        written(position() - start, event.isDurable());
+    }
+
+    /**
+     * Appends already encoded data, e.g., a cached or pre-serialized event. Data that doesn't fit into the current
+     * buffer is written right away along with everything buffered so far, in a single gathering write and without
+     * being copied. The given buffer is not retained.
+     *
+     * @param encoded the data to write, from its position to its limit
+     */
+    public synchronized void append(ByteBuffer encoded) {
+        rollIfNeeded(System.currentTimeMillis());
+        int length = encoded.remaining();
+        if (length <= buf.remaining()) {
+            buf.put(encoded);
+            if (lingerRegistration != null) {
+                lingerRegistration.markDirty();
+            }
+        } else {
+            try {
+                writeSegments(encoded);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        written(length, false);
+    }
+
+    private void rollIfNeeded(long timestamp) {
+        if (roller == null) {
+            return;
+        }
+        try {
+            if (roller.shouldRoll(position() - fileStart, timestamp)) {
+                writeSegments(null);
+                FileChannel next = roller.roll(fileChannel, timestamp);
+                if (next != fileChannel) {
+                    fileChannel = next;
+                    fileStart = position();
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private long position() {
+        return drained + pending + buf.position();
+    }
+
+    private void written(long length, boolean durable) {
+        if (flushTracker.written(length, durable)) {
+            try {
+                force();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void force() throws IOException {
+        writeSegments(null);
+        fileChannel.force(flushTracker.getPolicy().isMetadata());
+        flushTracker.forced();
+    }
+
+    @Override
+    public synchronized void endBatch() {
+        if (segment > 0 || buf.position() > 0) {
+            try {
+                writeSegments(null);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
     }
 
     @Override
     public synchronized void flush() throws IOException {
-        fileChannel.force(true);
+        if (flushTracker.getPolicy().isForceOnFlush()) {
+            force();
+        } else {
+            writeSegments(null);
+        }
     }
 
     @Override
     public void close() throws Exception {
+        flushTracker.close();
+        if (lingerRegistration != null) {
+            lingerRegistration.close();
+        }
         try {
             flush();
         } finally {
             fileChannel.close();
+            if (roller != null) {
+                roller.close();
+            }
         }
     }
 
@@ -69,15 +290,82 @@ public class FileChannelAppender implements Appender, Buffered<ByteBuffer> {
         return buf;
     }
 
+    /**
+     * Continues with the next segment, or writes all segments once they are full. In gathering mode, an event that
+     * already filled a segment's worth continues in a spill buffer instead.
+     */
     @Override
     public ByteBuffer drain() {
+        if (spilled > 0 || (segments.length > 1 && eventStart >= 0 && position() - eventStart >= SEGMENT_SIZE)) {
+            return spill();
+        }
+        if (segment < segments.length - 1) {
+            pending += buf.position();
+            buf = segments[++segment];
+            return buf;
+        }
         try {
-            buf.flip();
-            fileChannel.write(buf);
+            writeSegments(null);
         } catch (IOException e) {
             e.printStackTrace();
         }
-        buf.clear();
         return buf;
     }
+
+    private ByteBuffer spill() {
+        pending += buf.position();
+        if (spilled == spills.size()) {
+            spills.add(ByteBuffer.allocateDirect(SPILL_SIZE));
+        }
+        buf = spills.get(spilled++);
+        if (gather.length < segments.length + spilled + 1) {
+            gather = new ByteBuffer[segments.length + spills.size() + 1];
+        }
+        return buf;
+    }
+
+    private void writeSegments(ByteBuffer payload) throws IOException {
+        int count = 0;
+        long remaining = 0;
+        for (int i = 0; i <= segment + spilled; i++) {
+            ByteBuffer filled = i <= segment ? segments[i] : spills.get(i - segment - 1);
+            filled.flip();
+            if (filled.hasRemaining()) {
+                gather[count++] = filled;
+                remaining += filled.remaining();
+            }
+        }
+        if (payload != null && payload.hasRemaining()) {
+            gather[count++] = payload;
+            remaining += payload.remaining();
+        }
+        drained += remaining;
+        try {
+            if (count == 1) {
+                ByteBuffer src = gather[0];
+                while (src.hasRemaining()) {
+                    fileChannel.write(src);
+                }
+            } else {
+                while (remaining > 0) {
+                    remaining -= fileChannel.write(gather, 0, count);
+                }
+            }
+        } finally {
+            for (int i = 0; i <= segment; i++) {
+                segments[i].clear();
+            }
+            for (int i = 0; i < spilled; i++) {
+                spills.get(i).clear();
+            }
+            while (spills.size() > MAX_RETAINED_SPILLS) {
+                spills.remove(spills.size() - 1);
+            }
+            Arrays.fill(gather, 0, count, null);
+            spilled = 0;
+            segment = 0;
+            pending = 0;
+            buf = segments[0];
+        }
+    }
 }
@@ -18,43 +18,77 @@ package org.musigma.logging.appender;
 import org.musigma.logging.layout.Layout;
 import org.musigma.logging.impl.LogEvent;
 
-import java.io.BufferedOutputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.io.UncheckedIOException;
-import java.nio.ByteBuffer;
 import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Simple appender based on {@link FileOutputStream} and {@link BufferedOutputStream}.
+ * Simple appender based on {@link FileOutputStream}. Events are encoded directly into a {@link BufferedByteChannel}
+ * that writes to the stream's channel, which saves copying every event into a {@code byte[]} for a
+ * {@link java.io.BufferedOutputStream} (and from there again into the stream).
  */
 public class FileOutputStreamAppender implements Appender {
 
-    private final OutputStream out;
+    private final FileOutputStream fileOut;
+    private final BufferedByteChannel out;
     private final Layout layout;
-    private final byte[] writeBuffer = new byte[8192];
-    private final ByteBuffer buf = ByteBuffer.allocateDirect(8192);
+    private final FlushTracker flushTracker;
+    private final LingerFlushScheduler.Registration lingerRegistration;
 
     public FileOutputStreamAppender(Path logFile, Layout layout) {
+        this(logFile, layout, FlushPolicy.onClose());
+    }
+
+    public FileOutputStreamAppender(Path logFile, Layout layout, FlushPolicy flushPolicy) {
+        this(logFile, layout, flushPolicy, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param flushPolicy when to force written data to the storage device
+     * @param linger      how long buffered data may linger before the {@link LingerFlushScheduler} writes it out; zero
+     *                    or less to only write it when the buffer is full or on flush
+     */
+    public FileOutputStreamAppender(Path logFile, Layout layout, FlushPolicy flushPolicy, long linger, TimeUnit unit) {
         try {
-            this.out = new BufferedOutputStream(new FileOutputStream(logFile.toFile()));
+            this.fileOut = new FileOutputStream(logFile.toFile());
+            this.out = new BufferedByteChannel(fileOut.getChannel());
             this.layout = layout;
+            this.flushTracker = flushPolicy.newTracker(this);
         } catch (FileNotFoundException e) {
             throw new UncheckedIOException(e);
         }
+        this.lingerRegistration = linger > 0 ? LingerFlushScheduler.getDefault().register(this, linger, unit) : null;
     }
 
     @Override
     public synchronized void accept(LogEvent event) {
-        buf.clear();
-        layout.encode(event, buf);
-        buf.flip();
-        int length = buf.remaining();
-        buf.get(writeBuffer, 0, length);
+        long start = out.position();
+        layout.encode(event, out);
+        if (lingerRegistration != null) {
+            lingerRegistration.markDirty();
+        }
+        if (flushTracker.written(out.position() - start, event.isDurable())) {
+            try {
+                force();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void force() throws IOException {
+        out.flushBuffer();
+        fileOut.getChannel().force(flushTracker.getPolicy().isMetadata());
+        flushTracker.forced();
+    }
+
+    @Override
+    public synchronized void endBatch() {
         try {
-            out.write(writeBuffer, 0, length);
+            out.flushBuffer();
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -62,11 +96,19 @@ public class FileOutputStreamAppender implements Appender {
 
     @Override
     public synchronized void flush() throws IOException {
-        out.flush();
+        if (flushTracker.getPolicy().isForceOnFlush()) {
+            force();
+        } else {
+            out.flushBuffer();
+        }
     }
 
     @Override
     public void close() throws Exception {
+        flushTracker.close();
+        if (lingerRegistration != null) {
+            lingerRegistration.close();
+        }
         flush();
         out.close();
     }
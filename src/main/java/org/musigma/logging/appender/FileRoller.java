@@ -0,0 +1,349 @@
+/*
+ * Copyright 2017 Matt Sicker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.musigma.logging.appender;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rolls over the file of a rolling appender according to a {@link RolloverPolicy}. The next file is opened (and
+ * whatever else the appender needs to do with it, like mapping it) ahead of time on a background thread under a
+ * temporary name, so that rolling over on the logging thread only swaps the open file for the prepared one. Closing
+ * the old file, renaming it to its archive name and renaming the new file to the active name happen in the
+ * background afterwards; the new file can be written to while it still has its temporary name. Archives are then
+ * handed to the {@link ArchiveProcessor}.
+ *
+ * <p>This class is not thread safe; it is meant to be used by an appender holding its own lock.</p>
+ *
+ * @param <T> the appender's handle to an open file
+ */
+class FileRoller<T> implements AutoCloseable {
+
+    interface Opener<T> {
+        T open(Path file) throws IOException;
+    }
+
+    interface Closer<T> {
+        void close(T file) throws Exception;
+    }
+
+    interface Inspector {
+        /**
+         * Indicates whether a file left behind by a previous run holds any logged data, recovering it first if the
+         * appender needs to (e.g., to truncate the padding of a memory mapped file).
+         */
+        boolean hasData(Path file) throws IOException;
+    }
+
+    private final Path activeFile;
+    // where the next file is prepared
+    private final Path nextFile;
+    private final String stem;
+    private final String extension;
+    private final RolloverPolicy policy;
+    private final Opener<T> opener;
+    private final Closer<T> closer;
+    private final Inspector inspector;
+    private final ExecutorService executor;
+    private Future<T> next;
+    // time period of the active file, if rolling by time
+    private String periodLabel;
+    private long periodEnd = Long.MAX_VALUE;
+    // last archive index used in the current period
+    private int index;
+    // archive name for the active file once the next file is renamed to it; only used by the background thread
+    private Path pendingArchive;
+    private boolean renamePending;
+
+    FileRoller(Path activeFile, RolloverPolicy policy, Opener<T> opener, Closer<T> closer) throws IOException {
+        this(activeFile, policy, opener, closer, file -> Files.size(file) > 0);
+    }
+
+    /**
+     * @param inspector tells whether files left behind by a previous run hold data; the default only checks whether
+     *                  they are empty, which doesn't work for files that are preallocated when opened
+     */
+    FileRoller(Path activeFile, RolloverPolicy policy, Opener<T> opener, Closer<T> closer, Inspector inspector)
+        throws IOException {
+        this.activeFile = activeFile.toAbsolutePath();
+        String fileName = this.activeFile.getFileName().toString();
+        int dot = fileName.lastIndexOf('.');
+        this.stem = dot > 0 ? fileName.substring(0, dot) : fileName;
+        this.extension = dot > 0 ? fileName.substring(dot) : "";
+        this.nextFile = this.activeFile.resolveSibling('.' + fileName + ".next");
+        this.policy = policy;
+        this.opener = opener;
+        this.closer = closer;
+        this.inspector = inspector;
+        if (policy.isTimeBased()) {
+            startPeriod(System.currentTimeMillis());
+        } else {
+            index = lastIndex(null);
+        }
+        recoverNextFile();
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "FileRoller-" + fileName);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private void startPeriod(long millis) throws IOException {
+        periodLabel = policy.periodLabel(millis);
+        periodEnd = policy.periodEnd(millis);
+        index = lastIndex(periodLabel);
+    }
+
+    private String archivePrefix(String label) {
+        return label == null ? stem + '-' : stem + '-' + label + '-';
+    }
+
+    /**
+     * Finds the highest index of the existing archives of the given period so that new archives don't replace them.
+     */
+    private int lastIndex(String label) throws IOException {
+        String prefix = archivePrefix(label);
+        int last = 0;
+        try (DirectoryStream<Path> archives = Files.newDirectoryStream(activeFile.getParent())) {
+            for (Path archive : archives) {
+                String name = uncompressedName(archive);
+                if (!name.startsWith(prefix) || !name.endsWith(extension) ||
+                    name.length() <= prefix.length() + extension.length()) {
+                    continue;
+                }
+                String number = name.substring(prefix.length(), name.length() - extension.length());
+                try {
+                    last = Math.max(last, Integer.parseInt(number));
+                } catch (NumberFormatException e) {
+                    // some other file
+                }
+            }
+        }
+        return last;
+    }
+
+    /**
+     * Indicates whether the given file is one of the archives of the active file, compressed or not. Only names built
+     * by {@link #nextArchive()} match, so that other files sharing the stem (like {@code app-error.log} next to
+     * {@code app.log}) are never subject to retention.
+     */
+    private boolean isArchive(Path file) {
+        String fileName = file.getFileName().toString();
+        if (fileName.endsWith(ArchiveProcessor.TEMP_EXTENSION)) {
+            return false;
+        }
+        String name = uncompressedName(file);
+        String prefix = stem + '-';
+        if (!name.startsWith(prefix) || !name.endsWith(extension) ||
+            name.length() <= prefix.length() + extension.length()) {
+            return false;
+        }
+        String middle = name.substring(prefix.length(), name.length() - extension.length());
+        if (isIndex(middle)) {
+            return true;
+        }
+        int dash = middle.lastIndexOf('-');
+        return dash > 0 && policy.isTimeBased() && isIndex(middle.substring(dash + 1)) &&
+            policy.isPeriodLabel(middle.substring(0, dash));
+    }
+
+    private static boolean isIndex(String number) {
+        if (number.isEmpty() || number.length() > 9) {
+            return false;
+        }
+        for (int i = 0; i < number.length(); i++) {
+            if (number.charAt(i) < '0' || number.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return Integer.parseInt(number) > 0;
+    }
+
+    private static String uncompressedName(Path archive) {
+        String name = archive.getFileName().toString();
+        return name.endsWith(ArchiveProcessor.GZIP_EXTENSION) ?
+            name.substring(0, name.length() - ArchiveProcessor.GZIP_EXTENSION.length()) : name;
+    }
+
+    private Path nextArchive() {
+        return activeFile.resolveSibling(archivePrefix(periodLabel) + ++index + extension);
+    }
+
+    /**
+     * Completes a rollover interrupted by a crash, where the next file already got written to but wasn't renamed.
+     */
+    private void recoverNextFile() throws IOException {
+        if (!Files.exists(nextFile)) {
+            return;
+        }
+        if (!inspector.hasData(nextFile)) {
+            // only prepared, never written to
+            Files.delete(nextFile);
+            return;
+        }
+        archiveActive();
+        Files.move(nextFile, activeFile);
+    }
+
+    /**
+     * Moves an existing active file that holds data out of the way to its archive name.
+     */
+    void archiveActive() throws IOException {
+        if (Files.exists(activeFile) && inspector.hasData(activeFile)) {
+            Path archive = nextArchive();
+            Files.move(activeFile, archive);
+            ArchiveProcessor.getDefault().submit(archive, policy, this::isArchive);
+        }
+    }
+
+    /**
+     * Starts preparing the first file to roll over to. Call this once the appender is set up otherwise.
+     */
+    void start() {
+        next = executor.submit(this::openNext);
+    }
+
+    private T openNext() throws IOException {
+        // finish the previous rollover first; this is retried on the next rollover if it fails
+        finishRollover();
+        Files.deleteIfExists(nextFile);
+        return opener.open(nextFile);
+    }
+
+    private void finishRollover() throws IOException {
+        if (renamePending) {
+            if (pendingArchive != null) {
+                Files.move(activeFile, pendingArchive);
+                ArchiveProcessor.getDefault().submit(pendingArchive, policy, this::isArchive);
+                pendingArchive = null;
+            }
+            Files.move(nextFile, activeFile);
+            renamePending = false;
+        }
+    }
+
+    /**
+     * Indicates whether the active file should be rolled over before writing an event.
+     *
+     * @param size      the current size of the active file
+     * @param timestamp the timestamp of the event
+     */
+    boolean shouldRoll(long size, long timestamp) throws IOException {
+        if (timestamp >= periodEnd) {
+            if (size > 0) {
+                return true;
+            }
+            // nothing to archive; the active file simply covers the new period
+            startPeriod(timestamp);
+        }
+        return size >= policy.getMaxBytes();
+    }
+
+    /**
+     * Switches to the prepared file, waiting for it if it isn't ready yet, and schedules the current file to be closed
+     * and archived. If the next file couldn't be prepared, the current file is kept and preparing is retried.
+     *
+     * @param current   the appender's current file, which it must not touch anymore if a different file is returned
+     * @param timestamp the timestamp of the event that triggered the rollover
+     * @return the file to continue with
+     */
+    T roll(T current, long timestamp) {
+        T file;
+        try {
+            file = await(next);
+        } catch (IOException e) {
+            e.printStackTrace();
+            next = executor.submit(this::openNext);
+            return current;
+        }
+        Path archive = nextArchive();
+        if (timestamp >= periodEnd) {
+            try {
+                startPeriod(timestamp);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        executor.execute(() -> {
+            try {
+                closer.close(current);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            pendingArchive = archive;
+            renamePending = true;
+        });
+        next = executor.submit(this::openNext);
+        return file;
+    }
+
+    private static <T> T await(Future<T> future) throws IOException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Discards the prepared file and waits for pending renames. The appender closes its current file itself.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        Future<T> prepared = next;
+        executor.execute(() -> {
+            T file = null;
+            try {
+                file = await(prepared);
+            } catch (IOException ignored) {
+            }
+            try {
+                if (file != null) {
+                    closer.close(file);
+                    Files.deleteIfExists(nextFile);
+                } else {
+                    finishRollover();
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+    }
+}
@@ -19,22 +19,28 @@ import java.nio.ByteBuffer;
 import java.nio.channels.AsynchronousFileChannel;
 import java.nio.channels.CompletionHandler;
 import java.util.concurrent.Phaser;
+import java.util.function.Consumer;
 
 /**
- *
+ * Writes a buffer to a position in an {@link AsynchronousFileChannel}, continuing with partial writes until the whole
+ * buffer is written. The phaser tracks in-flight transfers, and the buffer is handed back through the given callback
+ * once the transfer is done (successfully or not).
  */
 class FileTransferAction implements Runnable, CompletionHandler<Integer, Void> {
     private final Phaser phaser;
     private final ByteBuffer src;
     private final AsynchronousFileChannel dst;
+    private final Consumer<ByteBuffer> onComplete;
 
     private long pos;
 
-    FileTransferAction(Phaser phaser, ByteBuffer src, AsynchronousFileChannel dst, long pos) {
+    FileTransferAction(Phaser phaser, ByteBuffer src, AsynchronousFileChannel dst, long pos,
+                       Consumer<ByteBuffer> onComplete) {
         this.phaser = phaser;
         this.src = src;
         this.dst = dst;
         this.pos = pos;
+        this.onComplete = onComplete;
     }
 
     @Override
@@ -47,12 +53,12 @@ class FileTransferAction implements Runnable, CompletionHandler<Integer, Void> {
         if (src.hasRemaining()) {
             dst.write(src, pos, null, this);
         } else {
-            src.rewind();
             unlock();
         }
     }
 
     private void unlock() {
+        onComplete.accept(src);
         phaser.arriveAndDeregister();
     }
 
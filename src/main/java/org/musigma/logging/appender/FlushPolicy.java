@@ -0,0 +1,146 @@
+/*
+ * Copyright 2017 Matt Sicker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.musigma.logging.appender;
+
+import org.musigma.logging.impl.LogEvent;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Determines when file appenders force written data to the storage device. Forcing (i.e., fsync) is what makes logged
+ * events survive an operating system crash or power loss, but it is by far the most expensive part of writing a log
+ * file. Appenders always force on {@link Appender#flush() flush} and {@link Appender#close() close} unless the policy
+ * is {@link #never()}; on top of that, a policy can force automatically every N events, every N bytes, or when a given
+ * time has passed since the last force (checked whenever an event is written, so events written together share a single
+ * force, and by a background timer, so that the last events before an appender goes idle get forced too).
+ * {@linkplain LogEvent#isDurable() Durable} events are always forced right away, together with everything written
+ * before them.
+ *
+ * <p>By default, forcing also updates file metadata such as the modification time; a {@linkplain #dataOnly() data
+ * only} policy skips that where possible. Memory mapped appenders can't tell the difference.</p>
+ */
+public final class FlushPolicy {
+
+    private static final FlushPolicy NEVER = new FlushPolicy(false, 0, 0, 0, true);
+    private static final FlushPolicy ON_CLOSE = new FlushPolicy(true, 0, 0, 0, true);
+    private static final FlushPolicy ALWAYS = new FlushPolicy(true, 1, 0, 0, true);
+
+    private final boolean forceOnFlush;
+    private final long everyEvents;
+    private final long everyBytes;
+    private final long intervalNanos;
+    private final boolean metadata;
+
+    private FlushPolicy(boolean forceOnFlush, long everyEvents, long everyBytes, long intervalNanos,
+                        boolean metadata) {
+        this.forceOnFlush = forceOnFlush;
+        this.everyEvents = everyEvents;
+        this.everyBytes = everyBytes;
+        this.intervalNanos = intervalNanos;
+        this.metadata = metadata;
+    }
+
+    /**
+     * Never forces anything, not even durable events; flushing only hands buffered data to the operating system.
+     */
+    public static FlushPolicy never() {
+        return NEVER;
+    }
+
+    /**
+     * Only forces on flush and close. This is the default policy.
+     */
+    public static FlushPolicy onClose() {
+        return ON_CLOSE;
+    }
+
+    /**
+     * Forces after every event.
+     */
+    public static FlushPolicy always() {
+        return ALWAYS;
+    }
+
+    public static FlushPolicy everyEvents(long events) {
+        if (events <= 0) {
+            throw new IllegalArgumentException("Number of events must be positive");
+        }
+        return new FlushPolicy(true, events, 0, 0, true);
+    }
+
+    public static FlushPolicy everyBytes(long bytes) {
+        if (bytes <= 0) {
+            throw new IllegalArgumentException("Number of bytes must be positive");
+        }
+        return new FlushPolicy(true, 0, bytes, 0, true);
+    }
+
+    /**
+     * Forces when at least the given time has passed since the last force and something was written since. This is
+     * checked when an event is written and in the background every half interval, so written data is forced within
+     * one and a half intervals at most.
+     */
+    public static FlushPolicy interval(long interval, TimeUnit unit) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Interval must be positive");
+        }
+        return new FlushPolicy(true, 0, 0, unit.toNanos(interval), true);
+    }
+
+    /**
+     * Returns a copy of this policy that doesn't force file metadata to be written.
+     */
+    public FlushPolicy dataOnly() {
+        return new FlushPolicy(forceOnFlush, everyEvents, everyBytes, intervalNanos, false);
+    }
+
+    /**
+     * Indicates whether forcing should include file metadata, i.e., the argument to pass to
+     * {@link java.nio.channels.FileChannel#force(boolean)}.
+     */
+    public boolean isMetadata() {
+        return metadata;
+    }
+
+    /**
+     * Indicates whether explicit flushes (including on close) force data to the storage device.
+     */
+    public boolean isForceOnFlush() {
+        return forceOnFlush;
+    }
+
+    long getEveryEvents() {
+        return everyEvents;
+    }
+
+    long getEveryBytes() {
+        return everyBytes;
+    }
+
+    long getIntervalNanos() {
+        return intervalNanos;
+    }
+
+    FlushTracker newTracker(Appender appender) {
+        return new FlushTracker(this, appender);
+    }
+
+    @Override
+    public String toString() {
+        return "FlushPolicy{forceOnFlush=" + forceOnFlush + ", everyEvents=" + everyEvents + ", everyBytes=" +
+            everyBytes + ", intervalNanos=" + intervalNanos + ", metadata=" + metadata + '}';
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2017 Matt Sicker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.musigma.logging.appender;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of what an appender wrote since it last forced its data, and decides when to force next according to a
+ * {@link FlushPolicy}. Safe to use from concurrent producers; racing producers may force more often than necessary,
+ * but never less.
+ *
+ * <p>For interval policies, a timer {@linkplain Appender#flush() flushes} the appender when data written since the last
+ * force has been waiting for an interval, so that the tail of a burst gets forced even if nothing else is written
+ * afterwards. The timer is started on the first write, and must be stopped by {@link #close()} when the appender is
+ * closed.</p>
+ */
+class FlushTracker {
+
+    // shared by the interval timers of all appenders; separate from the LingerFlushScheduler so that a slow force
+    // doesn't hold up lingering data of other appenders
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "FlushTracker-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final FlushPolicy policy;
+    private final Appender appender;
+    // whether any automatic forcing is configured; if not, writes don't need to be counted at all
+    private final boolean automatic;
+    private final AtomicLong events = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private volatile long lastForceNanos = System.nanoTime();
+    // whether anything was written since the timer last flushed
+    private volatile boolean dirty;
+    private volatile ScheduledFuture<?> timer;
+    private volatile boolean closed;
+
+    FlushTracker(FlushPolicy policy, Appender appender) {
+        this.policy = policy;
+        this.appender = appender;
+        this.automatic = policy.getEveryEvents() > 0 || policy.getEveryBytes() > 0 || policy.getIntervalNanos() > 0;
+    }
+
+    FlushPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Records a written event and returns whether the appender should force now. The appender must call
+     * {@link #forced()} after forcing.
+     */
+    boolean written(long length, boolean durable) {
+        if (!policy.isForceOnFlush()) {
+            return false;
+        }
+        if (durable) {
+            return true;
+        }
+        if (!automatic) {
+            return false;
+        }
+        long everyEvents = policy.getEveryEvents();
+        if (everyEvents > 0 && events.incrementAndGet() >= everyEvents) {
+            return true;
+        }
+        long everyBytes = policy.getEveryBytes();
+        if (everyBytes > 0 && bytes.addAndGet(length) >= everyBytes) {
+            return true;
+        }
+        long intervalNanos = policy.getIntervalNanos();
+        if (intervalNanos <= 0) {
+            return false;
+        }
+        if (timer == null) {
+            startTimer(intervalNanos);
+        }
+        if (!dirty) {
+            dirty = true;
+        }
+        return System.nanoTime() - lastForceNanos >= intervalNanos;
+    }
+
+    private synchronized void startTimer(long intervalNanos) {
+        if (timer == null && !closed) {
+            long period = Math.max(intervalNanos / 2, 1);
+            timer = TIMER.scheduleAtFixedRate(this::forceIfDue, period, period, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void forceIfDue() {
+        if (!dirty || closed || System.nanoTime() - lastForceNanos < policy.getIntervalNanos()) {
+            return;
+        }
+        dirty = false;
+        try {
+            appender.flush();
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    void forced() {
+        if (automatic) {
+            events.set(0);
+            bytes.set(0);
+            lastForceNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Stops the timer. Call this before closing the appender.
+     */
+    synchronized void close() {
+        closed = true;
+        ScheduledFuture<?> t = timer;
+        if (t != null) {
+            t.cancel(false);
+        }
+    }
+}
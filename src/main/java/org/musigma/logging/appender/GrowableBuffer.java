@@ -0,0 +1,59 @@
+/*
+ * Copyright 2017 Matt Sicker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.musigma.logging.appender;
+
+import org.musigma.logging.util.Buffered;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Direct buffer for holding a whole encoded event, so "draining" grows the buffer instead of writing anything. Meant
+ * to be kept per thread and reused for every event.
+ */
+class GrowableBuffer implements Buffered<ByteBuffer> {
+
+    private static final int INITIAL_SIZE = 8192;
+    // buffers that grew beyond this for a huge event get replaced again afterwards
+    private static final int MAX_RETAINED_SIZE = 256 * 1024;
+
+    private ByteBuffer buf = ByteBuffer.allocateDirect(INITIAL_SIZE);
+
+    @Override
+    public ByteBuffer buffer() {
+        return buf;
+    }
+
+    @Override
+    public ByteBuffer drain() {
+        ByteBuffer bigger = ByteBuffer.allocateDirect(buf.capacity() * 2);
+        buf.flip();
+        bigger.put(buf);
+        buf = bigger;
+        return buf;
+    }
+
+    /**
+     * Clears the buffer for the next event, shrinking it back if it grew too much.
+     */
+    ByteBuffer reset() {
+        if (buf.capacity() > MAX_RETAINED_SIZE) {
+            buf = ByteBuffer.allocateDirect(INITIAL_SIZE);
+        } else {
+            buf.clear();
+        }
+        return buf;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2017 Matt Sicker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.musigma.logging.appender;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Framing of the gzip file format (RFC 1952) around raw deflate data, i.e., the output of a
+ * {@link java.util.zip.Deflater} created with {@code nowrap} set.
+ */
+final class Gzip {
+
+    static final int HEADER_SIZE = 10;
+    static final int TRAILER_SIZE = 8;
+
+    private static final byte[] HEADER = {
+        0x1f, (byte) 0x8b, // magic
+        8, // deflate
+        0, // flags
+        0, 0, 0, 0, // modification time (none)
+        0, // extra flags
+        (byte) 0xff // unknown operating system
+    };
+
+    private Gzip() {
+    }
+
+    static void putHeader(ByteBuffer dst) {
+        dst.put(HEADER);
+    }
+
+    /**
+     * @param crc    CRC-32 of the uncompressed data
+     * @param length length of the uncompressed data
+     */
+    static void putTrailer(ByteBuffer dst, long crc, long length) {
+        ByteOrder order = dst.order();
+        dst.order(ByteOrder.LITTLE_ENDIAN);
+        dst.putInt((int) crc);
+        dst.putInt((int) length);
+        dst.order(order);
+    }
+}
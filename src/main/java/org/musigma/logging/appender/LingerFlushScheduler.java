@@ -0,0 +1,102 @@
+/*
+ * Copyright 2017 Matt Sicker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.musigma.logging.appender;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes out what buffering appenders have buffered once it has lingered for a while, so that log lines don't sit in
+ * memory indefinitely when there is little traffic. A single background thread serves all registered appenders.
+ *
+ * <p>Producers only {@linkplain Registration#markDirty() mark} their appender as dirty, which is a volatile read (and a
+ * volatile write the first time), so the fast path never takes the appender's lock. Every linger interval, the
+ * scheduler calls {@link Appender#endBatch()} on appenders that were marked since the previous check, which means
+ * buffered data becomes visible within at most two linger intervals. Under load, buffers still fill up and get written
+ * in large chunks in between.</p>
+ */
+public final class LingerFlushScheduler {
+
+    private static final LingerFlushScheduler DEFAULT = new LingerFlushScheduler();
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "LingerFlushScheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public static LingerFlushScheduler getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Registers an appender to have its buffered data written out after it lingered for the given time. Registering
+     * should be the last thing an appender's constructor does.
+     */
+    public Registration register(Appender appender, long linger, TimeUnit unit) {
+        if (linger <= 0) {
+            throw new IllegalArgumentException("Linger time must be positive");
+        }
+        Registration registration = new Registration(appender);
+        registration.future = executor.scheduleWithFixedDelay(registration::run, linger, linger, unit);
+        return registration;
+    }
+
+    public static final class Registration implements AutoCloseable {
+
+        private final Appender appender;
+        private volatile boolean dirty;
+        private volatile ScheduledFuture<?> future;
+
+        private Registration(Appender appender) {
+            this.appender = appender;
+        }
+
+        /**
+         * Indicates that the appender buffered new data.
+         */
+        public void markDirty() {
+            if (!dirty) {
+                dirty = true;
+            }
+        }
+
+        private void run() {
+            if (dirty) {
+                dirty = false;
+                try {
+                    appender.endBatch();
+                } catch (RuntimeException e) {
+                    // keep the schedule alive
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        /**
+         * Stops lingering flushes for the appender. A flush that is already running may still complete.
+         */
+        @Override
+        public void close() {
+            ScheduledFuture<?> f = future;
+            if (f != null) {
+                f.cancel(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2017 Matt Sicker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.musigma.logging.appender;
+
+import org.musigma.logging.util.Unsafe;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sliding window of fixed-size mapped regions of a file. A background thread keeps a number of regions following the
+ * current one mapped (and optionally prefaulted), and unmaps the regions that were {@linkplain #release released}.
+ * Since unmapping and mapping run in order on the same thread, the number of live mappings stays bounded by the
+ * number of regions mapped ahead plus the ones in use, no matter how long the file grows.
+ *
+ * <p>Consecutive regions overlap by a few bytes so that a writer can continue in the next region even if it stopped a
+ * few bytes short of the end of the current one. This class is not thread safe; it is meant to be used by a single
+ * writer at a time.</p>
+ */
+class MappedRegionPool implements AutoCloseable {
+
+    private static final int PAGE_SIZE = 4096;
+
+    private final FileChannel channel;
+    private final int regionSize;
+    private final int overlap;
+    private final int regionsAhead;
+    private final boolean prefault;
+    private final ExecutorService executor;
+    private final Queue<Region> ahead = new ArrayDeque<>();
+    // file position of the next region to map
+    private long nextStart;
+
+    /**
+     * @param regionSize   length of each mapped region
+     * @param overlap      number of bytes at the end of a region that are also mapped by the next one
+     * @param regionsAhead how many regions to keep mapped ahead of the current one
+     * @param prefault     whether to touch every page of a region after mapping it so writes don't page fault later
+     */
+    MappedRegionPool(FileChannel channel, int regionSize, int overlap, int regionsAhead, boolean prefault) {
+        if (regionSize <= 2 * overlap) {
+            throw new IllegalArgumentException("Region size too small for an overlap of " + overlap + ": " +
+                regionSize);
+        }
+        if (regionsAhead <= 0) {
+            throw new IllegalArgumentException("Must map at least one region ahead");
+        }
+        this.channel = channel;
+        this.regionSize = regionSize;
+        this.overlap = overlap;
+        this.regionsAhead = regionsAhead;
+        this.prefault = prefault;
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "MappedRegionPool-mapper");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    int regionSize() {
+        return regionSize;
+    }
+
+    /**
+     * Returns the region containing the given file position, with its buffer positioned there. Regions mapped ahead
+     * that don't fit the position are released; if none do, mapping restarts at the given position (waiting for it
+     * on the calling thread).
+     *
+     * @return the region's file position and mapped buffer
+     */
+    Region acquire(long position) {
+        Region region;
+        while ((region = ahead.poll()) != null) {
+            if (region.start <= position && position < region.start + regionSize - overlap) {
+                break;
+            }
+            release(region);
+            if (region.start > position) {
+                // the writer left a gap; start over from where it is
+                discardAhead();
+                region = null;
+                break;
+            }
+        }
+        if (region == null) {
+            nextStart = position;
+            region = mapAhead();
+        }
+        region.await().position((int) (position - region.start));
+        while (ahead.size() < regionsAhead) {
+            ahead.add(mapAhead());
+        }
+        return region;
+    }
+
+    /**
+     * Unmaps the region in the background. It must not be accessed anymore.
+     */
+    void release(Region region) {
+        executor.execute(() -> {
+            MappedByteBuffer buf = region.awaitQuietly();
+            if (buf != null) {
+                Unsafe.unmap(buf);
+            }
+        });
+    }
+
+    private Region mapAhead() {
+        long start = nextStart;
+        nextStart += regionSize - overlap;
+        return new Region(start, executor.submit(() -> map(start)));
+    }
+
+    private MappedByteBuffer map(long start) throws IOException {
+        // mapping past the end of the file extends it
+        MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_WRITE, start, regionSize);
+        buf.order(ByteOrder.nativeOrder());
+        if (prefault) {
+            // the overlap may still be written through the previous region
+            for (int i = overlap; i < regionSize; i += PAGE_SIZE) {
+                buf.put(i, (byte) 0);
+            }
+        }
+        return buf;
+    }
+
+    private void discardAhead() {
+        Region region;
+        while ((region = ahead.poll()) != null) {
+            release(region);
+        }
+    }
+
+    /**
+     * Unmaps all regions mapped ahead and waits for all pending unmaps. Regions that were acquired but not released
+     * are left alone.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        discardAhead();
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    static final class Region {
+        // file position of the region
+        final long start;
+        private final Future<MappedByteBuffer> mapping;
+
+        private Region(long start, Future<MappedByteBuffer> mapping) {
+            this.start = start;
+            this.mapping = mapping;
+        }
+
+        /**
+         * Waits until the region is mapped.
+         *
+         * @throws UncheckedIOException if mapping failed
+         */
+        MappedByteBuffer await() {
+            boolean interrupted = false;
+            try {
+                while (true) {
+                    try {
+                        return mapping.get();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw new UncheckedIOException((IOException) cause);
+                }
+                throw new IllegalStateException(cause);
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        private MappedByteBuffer awaitQuietly() {
+            try {
+                return await();
+            } catch (RuntimeException e) {
+                // nothing to unmap
+                return null;
+            }
+        }
+    }
+}
@@ -29,35 +29,305 @@ import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 
 import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
 
 /**
  * Appender using {@linkplain MappedByteBuffer memory mapped files}. The general code here is heavily adapted from
  * log4j-core's MemoryMappedFileManager.
+ *
+ * <p>By default, the next region is mapped on the logging thread once the current one is full. In premap mode, the
+ * regions come from a {@link MappedRegionPool}: a background thread maps the next regions (and optionally prefaults
+ * their pages) while the current one is still being filled, and unmaps the old regions. Rolling over is then mostly a
+ * matter of swapping buffers. Consecutive premapped regions overlap by a few bytes, so a layout that drains with a
+ * couple of bytes left (e.g., when a multibyte character doesn't fit anymore) simply continues in the overlap.</p>
+ *
+ * <p>Since the file is extended a whole region at a time, a crash leaves it padded with zero bytes. Optionally, the
+ * file starts with a {@value #HEADER_SIZE} byte header (a magic number followed by the committed file length) which
+ * is updated after every event; {@link #recover(Path, boolean)} uses it to truncate the padding. Without a header,
+ * recovery strips trailing zero bytes instead, which only works for text layouts whose events end in a newline; binary
+ * layouts (like {@link org.musigma.logging.layout.BinaryLayout}) can end an event with zero bytes, which would be cut
+ * off, so use a header when appending with those. The header is only guaranteed to be consistent with the data on disk
+ * after a {@link #flush()}, but it survives a process crash either way. In append mode, an existing file is recovered
+ * and continued instead of being replaced.</p>
+ *
+ * <p>With a {@link RolloverPolicy}, the appender rolls over to a new file. The next file is opened and its first
+ * region mapped in the background ahead of time (see {@link FileRoller}), and the old file is unmapped, truncated and
+ * closed in the background as well.</p>
  */
 public class MemoryMappedFileAppender implements Appender, Buffered<ByteBuffer> {
 
-    private final RandomAccessFile file;
+    // overlap between premapped regions; drains that leave more than this unused make the pool remap synchronously
+    private static final int PREMAP_OVERLAP = 64;
+
+    /**
+     * Size of the optional committed length header.
+     */
+    public static final int HEADER_SIZE = 16;
+    private static final byte[] HEADER_MAGIC = {'N', 'I', 'O', 'L', 'O', 'G', 0, 1};
+    private static final int COMMITTED_LENGTH_OFFSET = 8;
+
     private final Layout layout;
     // length of mapped file region
     private final int capacity;
-    // don't let the name fool you; we only update this position during remap() and close()
+    private final int regionsAhead;
+    private final boolean prefault;
+    private final boolean useHeader;
+    private final FlushTracker flushTracker;
+    private final FileRoller<MappedFile> roller;
+    private RandomAccessFile file;
+    // committed length header, if enabled
+    private MappedByteBuffer header;
+    // only used in premap mode
+    private MappedRegionPool pool;
+    private MappedRegionPool.Region region;
+    // file offset of the start of buf; don't let the name fool you, this only changes when switching to another
+    // region or file (remap(), swapRegion() and adopt()), not on every write
     private long position;
     private MappedByteBuffer buf;
 
     public MemoryMappedFileAppender(Path logFile, Layout layout, int capacity) {
+        this(logFile, layout, capacity, 0, false);
+    }
+
+    public MemoryMappedFileAppender(Path logFile, Layout layout, int capacity, FlushPolicy flushPolicy) {
+        this(logFile, layout, capacity, 0, false, false, false, flushPolicy);
+    }
+
+    /**
+     * @param premap   whether to map the next region in the background before the current one is full
+     * @param prefault whether to also touch every page of premapped regions so that writes don't page fault later
+     */
+    public MemoryMappedFileAppender(Path logFile, Layout layout, int capacity, boolean premap, boolean prefault) {
+        this(logFile, layout, capacity, premap ? 1 : 0, prefault);
+    }
+
+    /**
+     * @param regionsAhead number of regions to map in the background ahead of the current one, or 0 to map regions on
+     *                     the logging thread when needed
+     * @param prefault     whether to also touch every page of premapped regions so that writes don't page fault later
+     */
+    public MemoryMappedFileAppender(Path logFile, Layout layout, int capacity, int regionsAhead, boolean prefault) {
+        this(logFile, layout, capacity, regionsAhead, prefault, false, false, FlushPolicy.onClose());
+    }
+
+    /**
+     * @param regionsAhead number of regions to map in the background ahead of the current one, or 0 to map regions on
+     *                     the logging thread when needed
+     * @param prefault     whether to also touch every page of premapped regions so that writes don't page fault later
+     * @param append       whether to recover and continue an existing file instead of replacing it; without a
+     *                     header, only for text layouts (see {@link #recover})
+     * @param header       whether to keep a committed length header at the start of the file
+     * @param flushPolicy  when to force mapped data to the storage device
+     * @throws IllegalArgumentException if appending to a file whose header (or lack thereof) doesn't match
+     */
+    public MemoryMappedFileAppender(Path logFile, Layout layout, int capacity, int regionsAhead, boolean prefault,
+                                    boolean append, boolean header, FlushPolicy flushPolicy) {
+        this(logFile, layout, capacity, regionsAhead, prefault, append, header, flushPolicy, null);
+    }
+
+    /**
+     * @param regionsAhead   number of regions to map in the background ahead of the current one, or 0 to map regions
+     *                       on the logging thread when needed
+     * @param prefault       whether to also touch every page of premapped regions so that writes don't page fault
+     *                       later
+     * @param append         whether to recover and continue an existing file instead of replacing it (or archiving
+     *                       it when rolling); without a header, only for text layouts (see {@link #recover})
+     * @param header         whether to keep a committed length header at the start of every file
+     * @param flushPolicy    when to force mapped data to the storage device
+     * @param rolloverPolicy when to roll over to a new file, or {@code null} to always write to the same file
+     * @throws IllegalArgumentException if appending to a file whose header (or lack thereof) doesn't match
+     */
+    public MemoryMappedFileAppender(Path logFile, Layout layout, int capacity, int regionsAhead, boolean prefault,
+                                    boolean append, boolean header, FlushPolicy flushPolicy,
+                                    RolloverPolicy rolloverPolicy) {
         this.capacity = capacity;
         this.layout = layout;
+        this.regionsAhead = regionsAhead;
+        this.prefault = prefault;
+        this.useHeader = header;
+        this.flushTracker = flushPolicy.newTracker(this);
         try {
-            Files.deleteIfExists(logFile);
-            this.file = new RandomAccessFile(logFile.toFile(), "rw");
-            map(capacity);
+            long start = 0;
+            if (rolloverPolicy != null) {
+                this.roller = new FileRoller<>(logFile, rolloverPolicy, path -> open(path, 0), this::closeRolled,
+                    this::hasData);
+            } else {
+                this.roller = null;
+            }
+            if (append && Files.exists(logFile)) {
+                start = recover(logFile, header);
+            } else if (roller != null) {
+                roller.archiveActive();
+                Files.deleteIfExists(logFile);
+            } else {
+                Files.deleteIfExists(logFile);
+            }
+            adopt(open(logFile, start));
+            if (roller != null) {
+                roller.start();
+            }
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
     }
 
+    /**
+     * Truncates the zero padding left behind in a log file after a crash. With a header, the file is truncated to the
+     * committed length stored in it; otherwise, trailing zero bytes are removed, which is only correct for text
+     * layouts whose events end in a newline (binary records may end in zero bytes themselves).
+     *
+     * @param header whether the file has a committed length header
+     * @return the recovered file length
+     * @throws IllegalArgumentException if the file is expected to have a header but doesn't, or vice versa
+     */
+    public static long recover(Path logFile, boolean header) throws IOException {
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            boolean hasHeader = hasHeader(channel);
+            if (hasHeader != header && size > 0) {
+                throw new IllegalArgumentException(logFile + (header ? " has no" : " has a") + " log file header");
+            }
+            long length;
+            if (hasHeader) {
+                ByteBuffer committed = ByteBuffer.allocate(Long.BYTES);
+                read(channel, committed, COMMITTED_LENGTH_OFFSET);
+                length = Math.max(HEADER_SIZE, Math.min(size, committed.getLong(0)));
+            } else {
+                length = withoutTrailingZeros(channel, size);
+            }
+            channel.truncate(length);
+            return length;
+        }
+    }
+
+    /**
+     * Recovers a file left behind by a previous run and indicates whether it holds any logged data. A file that was
+     * only prepared for rolling over is never empty, since mapping it extends it (and writes the header, if enabled).
+     */
+    private boolean hasData(Path logFile) throws IOException {
+        try {
+            return recover(logFile, useHeader) > (useHeader ? HEADER_SIZE : 0);
+        } catch (IllegalArgumentException e) {
+            // written with a different header setting; not ours to recover
+            return Files.size(logFile) > 0;
+        }
+    }
+
+    private static boolean hasHeader(FileChannel channel) throws IOException {
+        if (channel.size() < HEADER_SIZE) {
+            return false;
+        }
+        ByteBuffer magic = ByteBuffer.allocate(HEADER_MAGIC.length);
+        read(channel, magic, 0);
+        return Arrays.equals(magic.array(), HEADER_MAGIC);
+    }
+
+    private static long withoutTrailingZeros(FileChannel channel, long size) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocate(8192);
+        long end = size;
+        while (end > 0) {
+            int length = (int) Math.min(chunk.capacity(), end);
+            chunk.clear().limit(length);
+            read(channel, chunk, end - length);
+            for (int i = length - 1; i >= 0; i--) {
+                if (chunk.get(i) != 0) {
+                    return end - length + i + 1;
+                }
+            }
+            end -= length;
+        }
+        return 0;
+    }
+
+    private static void read(FileChannel channel, ByteBuffer dst, long position) throws IOException {
+        while (dst.hasRemaining()) {
+            if (channel.read(dst, position + dst.position()) < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+    }
+
+    /**
+     * Opens a file and maps its first region, continuing after the given length of existing data (if any).
+     */
+    private MappedFile open(Path logFile, long length) throws IOException {
+        MappedFile mapped = new MappedFile();
+        mapped.file = new RandomAccessFile(logFile.toFile(), "rw");
+        try {
+            long start = length;
+            if (useHeader) {
+                mapped.header = mapped.file.getChannel().map(READ_WRITE, 0, HEADER_SIZE);
+                if (start == 0) {
+                    mapped.header.put(HEADER_MAGIC);
+                    start = HEADER_SIZE;
+                }
+                mapped.header.putLong(COMMITTED_LENGTH_OFFSET, start);
+            }
+            if (regionsAhead > 0) {
+                mapped.pool = new MappedRegionPool(mapped.file.getChannel(), capacity, PREMAP_OVERLAP, regionsAhead,
+                    prefault);
+                mapped.region = mapped.pool.acquire(start);
+                mapped.buf = mapped.region.await();
+                mapped.position = mapped.region.start;
+            } else {
+                mapped.buf = mapped.file.getChannel().map(READ_WRITE, start, capacity);
+                mapped.buf.order(ByteOrder.nativeOrder());
+                mapped.position = start;
+            }
+            return mapped;
+        } catch (IOException | RuntimeException e) {
+            mapped.file.close();
+            throw e;
+        }
+    }
+
+    private void adopt(MappedFile mapped) {
+        file = mapped.file;
+        header = mapped.header;
+        pool = mapped.pool;
+        region = mapped.region;
+        buf = mapped.buf;
+        position = mapped.position;
+    }
+
+    private MappedFile detach() {
+        MappedFile mapped = new MappedFile();
+        mapped.file = file;
+        mapped.header = header;
+        mapped.pool = pool;
+        mapped.region = region;
+        mapped.buf = buf;
+        mapped.position = position;
+        return mapped;
+    }
+
+    private void closeRolled(MappedFile rolled) throws Exception {
+        rolled.close(flushTracker.getPolicy().isForceOnFlush());
+    }
+
+    private void rollIfNeeded(long timestamp) {
+        try {
+            if (roller.shouldRoll(position + buf.position(), timestamp)) {
+                MappedFile current = detach();
+                MappedFile next = roller.roll(current, timestamp);
+                if (next != current) {
+                    adopt(next);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void commit(long length) {
+        if (header != null) {
+            header.putLong(COMMITTED_LENGTH_OFFSET, length);
+        }
+    }
+
     private void map(int length) throws IOException {
         FileChannel channel = file.getChannel();
         buf = channel.map(READ_WRITE, position, length);
@@ -77,25 +347,65 @@ public class MemoryMappedFileAppender implements Appender, Buffered<ByteBuffer>
         }
     }
 
+    private void swapRegion(MappedRegionPool.Region next) {
+        if (region != null) {
+            pool.release(region);
+        }
+        region = next;
+        buf = next.await();
+        position = next.start;
+    }
+
     @Override
     public synchronized void accept(LogEvent event) {
+        if (roller != null) {
+            rollIfNeeded(event.getTimestamp());
+        }
+        long start = position + buf.position();
         layout.encode(event, this);
+        long end = position + buf.position();
+        commit(end);
+        if (flushTracker.written(end - start, event.isDurable())) {
+            try {
+                force();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
     }
 
     @Override
     public synchronized void flush() throws IOException {
+        if (flushTracker.getPolicy().isForceOnFlush()) {
+            force();
+        }
+    }
+
+    private void force() throws IOException {
         buf.force();
+        // unmapping doesn't write out regions, so earlier regions may not be on disk yet either; with a header, all
+        // of the data must be before the committed length is
+        file.getChannel().force(false);
+        if (header != null) {
+            commit(position + buf.position());
+            header.force();
+        }
+        flushTracker.forced();
     }
 
     @Override
-    public void close() throws Exception {
-        position += buf.position();
+    public synchronized void close() throws Exception {
+        flushTracker.close();
         try {
             flush();
-            Unsafe.unmap(buf);
-            file.setLength(position);
         } finally {
-            file.close();
+            try {
+                detach().close(false);
+            } finally {
+                if (roller != null) {
+                    roller.close();
+                }
+            }
         }
     }
 
@@ -106,7 +416,51 @@ public class MemoryMappedFileAppender implements Appender, Buffered<ByteBuffer>
 
     @Override
     public ByteBuffer drain() {
-        remap();
+        if (pool != null) {
+            swapRegion(pool.acquire(position + buf.position()));
+        } else {
+            remap();
+        }
         return buf;
     }
+
+    /**
+     * Everything that belongs to one open log file, for handing it between the appender and the {@link FileRoller}.
+     */
+    private static final class MappedFile {
+        private RandomAccessFile file;
+        private MappedByteBuffer header;
+        private MappedRegionPool pool;
+        private MappedRegionPool.Region region;
+        private MappedByteBuffer buf;
+        private long position;
+
+        /**
+         * Unmaps the file and truncates it to the end of the written data.
+         */
+        private void close(boolean force) throws Exception {
+            long end = position + buf.position();
+            try {
+                if (force) {
+                    buf.force();
+                    file.getChannel().force(false);
+                    if (header != null) {
+                        header.force();
+                    }
+                }
+                if (pool != null) {
+                    pool.release(region);
+                    pool.close();
+                } else {
+                    Unsafe.unmap(buf);
+                }
+                if (header != null) {
+                    Unsafe.unmap(header);
+                }
+                file.setLength(end);
+            } finally {
+                file.close();
+            }
+        }
+    }
 }
@@ -18,48 +18,82 @@ package org.musigma.logging.appender;
 import org.musigma.logging.layout.Layout;
 import org.musigma.logging.impl.LogEvent;
 
-import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.io.UncheckedIOException;
-import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.OpenOption;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Simple appender using {@link Files#newOutputStream(Path, OpenOption...)} and {@link BufferedOutputStream}.
+ * Simple appender writing to the {@link FileChannel} that {@link Files#newOutputStream(Path, OpenOption...)} would
+ * wrap. Instead of a {@link java.io.BufferedOutputStream} on top of that stream, events are encoded directly into a
+ * {@link BufferedByteChannel}, so they reach the channel without being copied through a {@code byte[]}. Using the
+ * channel also lets the data be forced according to a {@link FlushPolicy}.
  */
 public class NioFileOutputStreamAppender implements Appender {
 
-    private final OutputStream out;
+    private final FileChannel fileChannel;
+    private final BufferedByteChannel out;
     private final Layout layout;
-    // it's faster to use bulk write(byte[]) methods than to loop from our ByteBuffer
-    private final byte[] writeBuffer = new byte[8192];
-    private final ByteBuffer buf = ByteBuffer.allocateDirect(8192);
+    private final FlushTracker flushTracker;
+    private final LingerFlushScheduler.Registration lingerRegistration;
 
     public NioFileOutputStreamAppender(Path logFile, Layout layout) {
+        this(logFile, layout, FlushPolicy.onClose());
+    }
+
+    public NioFileOutputStreamAppender(Path logFile, Layout layout, FlushPolicy flushPolicy) {
+        this(logFile, layout, flushPolicy, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param flushPolicy when to force written data to the storage device
+     * @param linger      how long buffered data may linger before the {@link LingerFlushScheduler} writes it out; zero
+     *                    or less to only write it when the buffer is full or on flush
+     */
+    public NioFileOutputStreamAppender(Path logFile, Layout layout, FlushPolicy flushPolicy, long linger,
+                                       TimeUnit unit) {
         try {
-            this.out = new BufferedOutputStream(
-                Files.newOutputStream(logFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
-                    StandardOpenOption.TRUNCATE_EXISTING));
+            this.fileChannel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+            this.out = new BufferedByteChannel(fileChannel);
             this.layout = layout;
+            this.flushTracker = flushPolicy.newTracker(this);
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
+        this.lingerRegistration = linger > 0 ? LingerFlushScheduler.getDefault().register(this, linger, unit) : null;
     }
 
     @Override
     public synchronized void accept(LogEvent event) {
-        buf.clear();
-        layout.encode(event, buf);
-        buf.flip();
-        // TODO: create a sort of BufferedOutputStream that takes write(ByteBuffer) methods
-        int length = buf.remaining();
-        buf.get(writeBuffer, 0, length);
+        long start = out.position();
+        layout.encode(event, out);
+        if (lingerRegistration != null) {
+            lingerRegistration.markDirty();
+        }
+        if (flushTracker.written(out.position() - start, event.isDurable())) {
+            try {
+                force();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void force() throws IOException {
+        out.flushBuffer();
+        fileChannel.force(flushTracker.getPolicy().isMetadata());
+        flushTracker.forced();
+    }
+
+    @Override
+    public synchronized void endBatch() {
         try {
-            out.write(writeBuffer, 0, length);
+            out.flushBuffer();
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -67,11 +101,19 @@ public class NioFileOutputStreamAppender implements Appender {
 
     @Override
     public synchronized void flush() throws IOException {
-        out.flush();
+        if (flushTracker.getPolicy().isForceOnFlush()) {
+            force();
+        } else {
+            out.flushBuffer();
+        }
     }
 
     @Override
     public void close() throws Exception {
+        flushTracker.close();
+        if (lingerRegistration != null) {
+            lingerRegistration.close();
+        }
         flush();
         out.close();
     }
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2017 Matt Sicker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.musigma.logging.appender;
+
+/**
+ * What an {@link AsyncAppender} does with an event when its queue is full. The first two policies keep every event at
+ * the cost of producer latency; the drop policies keep latency bounded at the cost of completeness.
+ */
+public enum OverflowPolicy {
+    /**
+     * Waits on a condition until the consumer signals that it has freed up space.
+     */
+    BLOCK,
+
+    /**
+     * Retries in a spin loop for a short while, then yields, and finally parks in short intervals until space frees up.
+     * Reacts faster than {@link #BLOCK} at the cost of burning CPU while the queue is full.
+     */
+    SPIN_THEN_PARK,
+
+    /**
+     * Discards the event being logged.
+     */
+    DROP_NEWEST,
+
+    /**
+     * Discards the oldest queued event to make room for the event being logged.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Bypasses the queue and hands the event to the delegate appender on the calling thread. Events logged this way may
+     * be written out of order relative to queued events.
+     */
+    SYNCHRONOUS
+}
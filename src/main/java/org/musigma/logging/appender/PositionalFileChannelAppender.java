@@ -0,0 +1,103 @@
+/*
+ * Copyright 2017 Matt Sicker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.musigma.logging.appender;
+
+import org.musigma.logging.impl.LogEvent;
+import org.musigma.logging.layout.Layout;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Synchronous appender using positional {@link FileChannel} writes without any locking. Each thread encodes events
+ * into its own reusable direct buffer, reserves space for the event in the file with an atomic add, and then writes
+ * the event at that position. Producers only ever contend on the position counter.
+ *
+ * <p>Events from different threads may reach the file in a different order than their positions, so a reader could
+ * briefly see a gap of zeros that gets filled by a concurrent write. As with all {@link FileChannel} appenders,
+ * interrupting a thread while it writes closes the channel.</p>
+ */
+public class PositionalFileChannelAppender implements Appender {
+
+    private final FileChannel fileChannel;
+    private final Layout layout;
+    private final AtomicLong nextWritablePosition = new AtomicLong();
+    private final ThreadLocal<GrowableBuffer> bufferLocal = ThreadLocal.withInitial(GrowableBuffer::new);
+    private final FlushTracker flushTracker;
+
+    public PositionalFileChannelAppender(Path logFile, Layout layout) {
+        this(logFile, layout, FlushPolicy.onClose());
+    }
+
+    public PositionalFileChannelAppender(Path logFile, Layout layout, FlushPolicy flushPolicy) {
+        try {
+            this.fileChannel = FileChannel.open(logFile, WRITE, CREATE, TRUNCATE_EXISTING);
+            this.layout = layout;
+            this.flushTracker = flushPolicy.newTracker(this);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void accept(LogEvent event) {
+        GrowableBuffer eventBuffer = bufferLocal.get();
+        eventBuffer.reset();
+        layout.encode(event, eventBuffer);
+        ByteBuffer buf = eventBuffer.buffer();
+        buf.flip();
+        int length = buf.remaining();
+        long pos = nextWritablePosition.getAndAdd(length);
+        try {
+            while (buf.hasRemaining()) {
+                pos += fileChannel.write(buf, pos);
+            }
+            if (flushTracker.written(length, event.isDurable())) {
+                force();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void force() throws IOException {
+        fileChannel.force(flushTracker.getPolicy().isMetadata());
+        flushTracker.forced();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (flushTracker.getPolicy().isForceOnFlush()) {
+            force();
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        flushTracker.close();
+        try {
+            flush();
+        } finally {
+            fileChannel.close();
+        }
+    }
+}
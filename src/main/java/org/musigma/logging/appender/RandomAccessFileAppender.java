@@ -32,11 +32,17 @@ public class RandomAccessFileAppender implements Appender {
 
     private final RandomAccessFile file;
     private final Layout layout;
+    private final FlushTracker flushTracker;
 
     public RandomAccessFileAppender(Path logFile, Layout layout) {
+        this(logFile, layout, FlushPolicy.onClose());
+    }
+
+    public RandomAccessFileAppender(Path logFile, Layout layout, FlushPolicy flushPolicy) {
         try {
             this.file = new RandomAccessFile(logFile.toFile(), "rw");
             this.layout = layout;
+            this.flushTracker = flushPolicy.newTracker(this);
         } catch (FileNotFoundException e) {
             throw new UncheckedIOException(e);
         }
@@ -44,25 +50,37 @@ public class RandomAccessFileAppender implements Appender {
 
     @Override
     public synchronized void accept(LogEvent event) {
-        write(layout.encode(event));
-    }
-
-    private void write(ByteBuffer buf) {
-        byte[] b = buf.array();
+        ByteBuffer buf = layout.encode(event);
         try {
-            file.write(b);
+            write(buf);
+            if (flushTracker.written(buf.remaining(), event.isDurable())) {
+                force();
+            }
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    private void write(ByteBuffer buf) throws IOException {
+        byte[] b = buf.array();
+        file.write(b);
+    }
+
+    private void force() throws IOException {
+        file.getChannel().force(flushTracker.getPolicy().isMetadata());
+        flushTracker.forced();
+    }
+
     @Override
     public synchronized void flush() throws IOException {
-        file.getChannel().force(true);
+        if (flushTracker.getPolicy().isForceOnFlush()) {
+            force();
+        }
     }
 
     @Override
     public void close() throws Exception {
+        flushTracker.close();
         flush();
         file.close();
     }
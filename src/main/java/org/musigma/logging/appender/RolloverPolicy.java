@@ -0,0 +1,184 @@
+/*
+ * Copyright 2017 Matt Sicker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.musigma.logging.appender;
+
+import org.musigma.logging.impl.LogEvent;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Determines when rolling file appenders switch to a new file. Files can be rolled once they reach a given size, at
+ * the start of every minute, hour or day (in the system time zone), or both. Time boundaries are checked against the
+ * {@linkplain LogEvent#getTimestamp() timestamps of logged events}, so an idle appender keeps its file until the next
+ * event arrives. A file is never rolled before it contains anything.
+ *
+ * <p>When rolling, the active file is renamed to an archive named after it with an index and, when rolling by time,
+ * the time period it covers; e.g., {@code app.log} becomes {@code app-1.log}, {@code app-2.log} and so on, or
+ * {@code app-2017-06-01-1.log} when rolling daily.</p>
+ *
+ * <p>Archives can be {@linkplain #gzip() compressed} and {@linkplain #retain(int, long) deleted} once there are too
+ * many of them by the {@link ArchiveProcessor}, in the background.</p>
+ */
+public final class RolloverPolicy {
+
+    private final long maxBytes;
+    private final ChronoUnit period;
+    private final DateTimeFormatter periodFormat;
+    private final ZoneId zone = ZoneId.systemDefault();
+    private final boolean compressed;
+    private final int maxFiles;
+    private final long maxTotalBytes;
+
+    private RolloverPolicy(long maxBytes, ChronoUnit period) {
+        this(maxBytes, period, false, 0, 0);
+    }
+
+    private RolloverPolicy(long maxBytes, ChronoUnit period, boolean compressed, int maxFiles, long maxTotalBytes) {
+        this.maxBytes = maxBytes;
+        this.period = period;
+        this.periodFormat = period == null ? null : DateTimeFormatter.ofPattern(periodPattern(period));
+        this.compressed = compressed;
+        this.maxFiles = maxFiles;
+        this.maxTotalBytes = maxTotalBytes;
+    }
+
+    private static String periodPattern(ChronoUnit period) {
+        switch (period) {
+            case DAYS:
+                return "yyyy-MM-dd";
+            case HOURS:
+                return "yyyy-MM-dd-HH";
+            case MINUTES:
+                return "yyyy-MM-dd-HH-mm";
+            default:
+                throw new IllegalArgumentException("Can only roll every minute, hour or day, not " + period);
+        }
+    }
+
+    /**
+     * Rolls files once they reach the given size. A file may exceed the size by up to one event (or for buffered
+     * appenders, by the data buffered when the limit was reached).
+     */
+    public static RolloverPolicy size(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Maximum file size must be positive");
+        }
+        return new RolloverPolicy(maxBytes, null);
+    }
+
+    /**
+     * Rolls files at the start of every {@linkplain ChronoUnit#MINUTES minute}, {@linkplain ChronoUnit#HOURS hour}
+     * or {@linkplain ChronoUnit#DAYS day}.
+     */
+    public static RolloverPolicy time(ChronoUnit period) {
+        return new RolloverPolicy(Long.MAX_VALUE, period);
+    }
+
+    /**
+     * Rolls files at the start of every period and whenever they reach the given size within a period.
+     */
+    public static RolloverPolicy sizeOrTime(long maxBytes, ChronoUnit period) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Maximum file size must be positive");
+        }
+        return new RolloverPolicy(maxBytes, period);
+    }
+
+    /**
+     * Returns a copy of this policy that compresses archives with gzip, adding a {@code .gz} extension to their names.
+     */
+    public RolloverPolicy gzip() {
+        return new RolloverPolicy(maxBytes, period, true, maxFiles, maxTotalBytes);
+    }
+
+    /**
+     * Returns a copy of this policy that deletes the oldest archives once there are more than the given number of
+     * them or once they take up more than the given number of bytes (after compression) altogether.
+     *
+     * @param maxFiles      maximum number of archives to keep, or 0 for no limit
+     * @param maxTotalBytes maximum total size of the archives to keep, or 0 for no limit
+     */
+    public RolloverPolicy retain(int maxFiles, long maxTotalBytes) {
+        if (maxFiles < 0 || maxTotalBytes < 0) {
+            throw new IllegalArgumentException("Retention limits must not be negative");
+        }
+        return new RolloverPolicy(maxBytes, period, compressed, maxFiles, maxTotalBytes);
+    }
+
+    long getMaxBytes() {
+        return maxBytes;
+    }
+
+    boolean isCompressed() {
+        return compressed;
+    }
+
+    boolean hasRetention() {
+        return maxFiles > 0 || maxTotalBytes > 0;
+    }
+
+    int getMaxFiles() {
+        return maxFiles;
+    }
+
+    long getMaxTotalBytes() {
+        return maxTotalBytes;
+    }
+
+    boolean isTimeBased() {
+        return period != null;
+    }
+
+    /**
+     * Returns the epoch millisecond at which the period containing the given time ends.
+     */
+    long periodEnd(long millis) {
+        return Instant.ofEpochMilli(millis).atZone(zone).truncatedTo(period).plus(1, period).toInstant()
+            .toEpochMilli();
+    }
+
+    /**
+     * Returns the label of the period containing the given time, as used in archive file names.
+     */
+    String periodLabel(long millis) {
+        return periodFormat.format(Instant.ofEpochMilli(millis).atZone(zone));
+    }
+
+    /**
+     * Indicates whether the given text is a period label as returned by {@link #periodLabel(long)}.
+     */
+    boolean isPeriodLabel(String label) {
+        if (periodFormat == null) {
+            return false;
+        }
+        try {
+            periodFormat.parse(label);
+            return true;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RolloverPolicy{maxBytes=" + maxBytes + ", period=" + period + ", compressed=" + compressed +
+            ", maxFiles=" + maxFiles + ", maxTotalBytes=" + maxTotalBytes + '}';
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2017 Matt Sicker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.musigma.logging.impl;
+
+/**
+ * Source of timestamps for log events. Loggers read the clock once per event, so implementations should be cheap.
+ */
+public interface Clock {
+
+    long NANOS_PER_MILLI = 1_000_000L;
+
+    /**
+     * Returns the current time in milliseconds since the epoch.
+     */
+    long currentTimeMillis();
+
+    /**
+     * Returns the current time in nanoseconds since the epoch. Clocks without sub-millisecond precision return
+     * {@link #currentTimeMillis()} scaled to nanoseconds.
+     */
+    default long currentTimeNanos() {
+        return currentTimeMillis() * NANOS_PER_MILLI;
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2017 Matt Sicker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.musigma.logging.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Clock that is updated by a background ticker thread, so reading it only costs a volatile read. Timestamps lag behind
+ * the system clock by up to one tick interval (plus however late the ticker thread gets scheduled). Close the clock to
+ * stop the ticker thread.
+ */
+public class CoarseClock implements Clock, AutoCloseable {
+
+    private volatile long millis = System.currentTimeMillis();
+    private volatile boolean closed;
+
+    public CoarseClock() {
+        this(1, TimeUnit.MILLISECONDS);
+    }
+
+    public CoarseClock(long tick, TimeUnit unit) {
+        long tickNanos = unit.toNanos(tick);
+        Thread ticker = new Thread(() -> {
+            while (!closed) {
+                millis = System.currentTimeMillis();
+                LockSupport.parkNanos(this, tickNanos);
+            }
+        }, "CoarseClock-ticker");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return millis;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+}
@@ -16,22 +16,37 @@
 package org.musigma.logging.impl;
 
 import org.musigma.logging.util.Formattable;
-
-import java.util.Date;
+import org.musigma.logging.util.TimestampEncoder;
 
 /**
  * Any time a log message is created through a Logger, a LogEvent is created. This event is then handled by an Appender
  * which can encode the event via a Layout before writing to some underlying storage or network device.
+ *
+ * <p>Events may be {@linkplain MutableLogEvent reused}, so appenders must not hold on to an event (or its message)
+ * after returning from {@code accept}; appenders that hand events off to another thread need to copy them.</p>
  */
 public class LogEvent implements Formattable {
-    private final CharSequence message;
-    private final long timestamp;
-    // FIXME: is this even valid? we're not using it yet to be able to say
-    private final ThreadLocal<StringBuilder> builderLocal = ThreadLocal.withInitial(StringBuilder::new);
+    private static final ThreadLocal<StringBuilder> BUILDER_LOCAL = ThreadLocal.withInitial(StringBuilder::new);
+
+    // only mutated by MutableLogEvent
+    CharSequence message;
+    long timestamp;
+    int nanoOfMillisecond;
+    boolean durable;
 
     public LogEvent(CharSequence message, long timestamp) {
+        this(message, timestamp, 0);
+    }
+
+    public LogEvent(CharSequence message, long timestamp, int nanoOfMillisecond) {
+        this(message, timestamp, nanoOfMillisecond, false);
+    }
+
+    public LogEvent(CharSequence message, long timestamp, int nanoOfMillisecond, boolean durable) {
         this.message = message;
         this.timestamp = timestamp;
+        this.nanoOfMillisecond = nanoOfMillisecond;
+        this.durable = durable;
     }
 
     public CharSequence getMessage() {
@@ -42,10 +57,26 @@ public class LogEvent implements Formattable {
         return timestamp;
     }
 
+    /**
+     * Returns the nanoseconds within the millisecond of {@link #getTimestamp()}. Always 0 unless the event was created
+     * with a {@link Clock} that has sub-millisecond precision.
+     */
+    public int getNanoOfMillisecond() {
+        return nanoOfMillisecond;
+    }
+
+    /**
+     * Indicates whether this event should be forced to the storage device as soon as it is written.
+     */
+    public boolean isDurable() {
+        return durable;
+    }
+
     @Override
     public CharSequence format() {
-        String datetime = new Date(timestamp).toString();
-        StringBuilder sb = builderLocal.get();
+        String datetime = TimestampEncoder.getInstance().format(timestamp);
+        StringBuilder sb = BUILDER_LOCAL.get();
+        sb.setLength(0);
         sb.ensureCapacity(4 + datetime.length() + message.length());
         sb.append('[').append(datetime).append(']').append(' ').append(message).append('\n');
         return sb;
@@ -54,7 +85,7 @@ public class LogEvent implements Formattable {
     @Override
     public void formatTo(StringBuilder buf) {
         buf.append('[')
-            .append(new Date(timestamp).toString()) // so it's not completely garbage-free; sue me
+            .append(TimestampEncoder.getInstance().format(timestamp))
             .append(']')
             .append(' ')
             .append(message)
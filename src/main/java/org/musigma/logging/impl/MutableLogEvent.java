@@ -0,0 +1,90 @@
+/*
+ * Copyright 2017 Matt Sicker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.musigma.logging.impl;
+
+/**
+ * Reusable {@link LogEvent} for garbage-free logging. Loggers keep one per thread for synchronous appenders, and
+ * asynchronous appenders preallocate one per queue slot and {@linkplain #copyFrom(LogEvent) copy} events into it.
+ */
+public class MutableLogEvent extends LogEvent {
+
+    private static final int INITIAL_MESSAGE_CAPACITY = 128;
+    // don't let a single huge message pin a huge buffer forever; a StringBuilder grows to twice its capacity plus two,
+    // so this keeps a buffer that grew at most twice from the initial capacity (128 -> 258 -> 518)
+    private static final int MAX_RETAINED_MESSAGE_CAPACITY = (INITIAL_MESSAGE_CAPACITY * 2 + 2) * 2 + 2;
+
+    private final StringBuilder messageText = new StringBuilder(INITIAL_MESSAGE_CAPACITY);
+    private boolean reserved;
+
+    public MutableLogEvent() {
+        super(null, 0);
+    }
+
+    public void set(CharSequence message, long timestamp, int nanoOfMillisecond) {
+        set(message, timestamp, nanoOfMillisecond, false);
+    }
+
+    public void set(CharSequence message, long timestamp, int nanoOfMillisecond, boolean durable) {
+        this.message = message;
+        this.timestamp = timestamp;
+        this.nanoOfMillisecond = nanoOfMillisecond;
+        this.durable = durable;
+    }
+
+    /**
+     * Copies the given event into this one. Strings are immutable and are shared; any other message is copied into a
+     * buffer owned by this event as the original may be reused by the caller.
+     */
+    public void copyFrom(LogEvent event) {
+        CharSequence message = event.getMessage();
+        if (message == null || message instanceof String) {
+            this.message = message;
+        } else {
+            messageText.setLength(0);
+            messageText.append(message);
+            this.message = messageText;
+        }
+        this.timestamp = event.getTimestamp();
+        this.nanoOfMillisecond = event.getNanoOfMillisecond();
+        this.durable = event.isDurable();
+    }
+
+    /**
+     * Drops the reference to the message and releases this event for reuse.
+     */
+    public void clear() {
+        message = null;
+        durable = false;
+        if (messageText.capacity() > MAX_RETAINED_MESSAGE_CAPACITY) {
+            messageText.setLength(MAX_RETAINED_MESSAGE_CAPACITY);
+            messageText.trimToSize();
+        }
+        messageText.setLength(0);
+        reserved = false;
+    }
+
+    /**
+     * Reserves this event for the current call. Fails if the event is already in use further up the stack, e.g., when
+     * an appender logs something itself.
+     */
+    boolean tryReserve() {
+        if (reserved) {
+            return false;
+        }
+        reserved = true;
+        return true;
+    }
+}
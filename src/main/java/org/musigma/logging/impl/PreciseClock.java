@@ -0,0 +1,94 @@
+/*
+ * Copyright 2017 Matt Sicker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.musigma.logging.impl;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Clock with sub-millisecond precision. The system clock only has millisecond precision (on Java 8 at least), so this
+ * extrapolates nanoseconds from {@link System#nanoTime()} relative to a calibration point taken at a millisecond edge
+ * of the system clock. Events logged within the same millisecond thus still get ordered timestamps.
+ *
+ * <p>The milliseconds returned always agree with {@link System#currentTimeMillis()}; when the extrapolated time
+ * disagrees with it by more than a millisecond (e.g., after the system clock was adjusted), the clock recalibrates.
+ * Since calibrating waits for the next millisecond edge, this happens on a background thread; until it is done,
+ * timestamps have millisecond precision only.</p>
+ */
+public class PreciseClock implements Clock {
+
+    private volatile Calibration calibration = Calibration.calibrate();
+    private final AtomicBoolean recalibrating = new AtomicBoolean();
+
+    @Override
+    public long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    @Override
+    public long currentTimeNanos() {
+        long millis = System.currentTimeMillis();
+        Calibration c = calibration;
+        long nanos = c.epochNanos + System.nanoTime() - c.nanoTime;
+        long extrapolatedMillis = Math.floorDiv(nanos, NANOS_PER_MILLI);
+        if (extrapolatedMillis == millis) {
+            return nanos;
+        }
+        long base = millis * NANOS_PER_MILLI;
+        if (Math.abs(extrapolatedMillis - millis) > 1) {
+            recalibrate();
+            return base;
+        }
+        // the two clocks read just either side of a millisecond edge
+        return extrapolatedMillis < millis ? base : base + NANOS_PER_MILLI - 1;
+    }
+
+    private void recalibrate() {
+        if (!recalibrating.compareAndSet(false, true)) {
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                calibration = Calibration.calibrate();
+            } finally {
+                recalibrating.set(false);
+            }
+        }, "PreciseClock-calibration");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static final class Calibration {
+        private final long epochNanos;
+        private final long nanoTime;
+
+        private Calibration(long epochNanos, long nanoTime) {
+            this.epochNanos = epochNanos;
+            this.nanoTime = nanoTime;
+        }
+
+        private static Calibration calibrate() {
+            long start = System.currentTimeMillis();
+            long millis;
+            long nanoTime;
+            // wait for the next millisecond so that the calibration point has no sub-millisecond offset
+            do {
+                millis = System.currentTimeMillis();
+                nanoTime = System.nanoTime();
+            } while (millis == start);
+            return new Calibration(millis * NANOS_PER_MILLI, nanoTime);
+        }
+    }
+}
@@ -19,19 +19,52 @@ import org.musigma.logging.Logger;
 import org.musigma.logging.appender.Appender;
 
 /**
- * Simple logger that writes messages into an {@link Appender}.
+ * Simple logger that writes messages into an {@link Appender}, timestamped by a {@link Clock}. In garbage-free mode,
+ * each thread reuses a single {@link MutableLogEvent} instead of allocating a new event per call.
  */
 public class SimpleLogger implements Logger {
 
     private final Appender appender;
+    private final Clock clock;
+    private final ThreadLocal<MutableLogEvent> reusableEvent;
 
     public SimpleLogger(Appender appender) {
+        this(appender, new SystemClock());
+    }
+
+    public SimpleLogger(Appender appender, Clock clock) {
+        this(appender, clock, false);
+    }
+
+    public SimpleLogger(Appender appender, Clock clock, boolean garbageFree) {
         this.appender = appender;
+        this.clock = clock;
+        this.reusableEvent = garbageFree ? ThreadLocal.withInitial(MutableLogEvent::new) : null;
     }
 
     @Override
     public void log(CharSequence msg) {
-        appender.accept(new LogEvent(msg, System.currentTimeMillis()));
+        log(msg, false);
+    }
+
+    @Override
+    public void log(CharSequence msg, boolean durable) {
+        long nanos = clock.currentTimeNanos();
+        long timestamp = Math.floorDiv(nanos, Clock.NANOS_PER_MILLI);
+        int nanoOfMillisecond = (int) Math.floorMod(nanos, Clock.NANOS_PER_MILLI);
+        if (reusableEvent != null) {
+            MutableLogEvent event = reusableEvent.get();
+            if (event.tryReserve()) {
+                try {
+                    event.set(msg, timestamp, nanoOfMillisecond, durable);
+                    appender.accept(event);
+                } finally {
+                    event.clear();
+                }
+                return;
+            }
+        }
+        appender.accept(new LogEvent(msg, timestamp, nanoOfMillisecond, durable));
     }
 
 }
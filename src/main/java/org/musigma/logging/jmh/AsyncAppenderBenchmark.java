@@ -0,0 +1,136 @@
+/*
+ * Copyright 2017 Matt Sicker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.musigma.logging.jmh;
+
+import org.musigma.logging.Logger;
+import org.musigma.logging.appender.Appender;
+import org.musigma.logging.appender.AsyncAppender;
+import org.musigma.logging.appender.OverflowPolicy;
+import org.musigma.logging.impl.LogEvent;
+import org.musigma.logging.impl.SimpleLogger;
+import org.musigma.logging.util.BlockingWaitStrategy;
+import org.musigma.logging.util.BusySpinWaitStrategy;
+import org.musigma.logging.util.TimedParkWaitStrategy;
+import org.musigma.logging.util.WaitStrategy;
+import org.musigma.logging.util.YieldingWaitStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the consumer wait strategies of {@link AsyncAppender}. The throughput benchmark shows how fast producers can
+ * hand off events, while the round trip benchmark measures how long an event waits before the consumer wakes up and
+ * delivers it when the appender was idle. Run with {@code -prof stack} or watch CPU usage to see the cost of each.
+ */
+@State(Scope.Benchmark)
+public class AsyncAppenderBenchmark {
+
+    @Param({"busySpin", "yielding", "timedPark", "blocking"})
+    public String waitStrategy;
+
+    private Logger logger;
+    private Appender appender;
+    private final CountingAppender sink = new CountingAppender();
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        appender = new AsyncAppender(sink, AsyncAppender.DEFAULT_CAPACITY, OverflowPolicy.BLOCK,
+            newWaitStrategy(waitStrategy));
+        logger = new SimpleLogger(appender);
+    }
+
+    private static WaitStrategy newWaitStrategy(String name) {
+        switch (name) {
+            case "busySpin":
+                return new BusySpinWaitStrategy();
+            case "yielding":
+                return new YieldingWaitStrategy();
+            case "timedPark":
+                return new TimedParkWaitStrategy();
+            case "blocking":
+                return new BlockingWaitStrategy();
+            default:
+                throw new IllegalArgumentException("Unknown wait strategy: " + name);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void teardown() throws Exception {
+        appender.close();
+    }
+
+    @Benchmark
+    public void logThroughput() {
+        logger.log("Test message");
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Threads(1)
+    public void logRoundTrip() {
+        long target = sink.count + 1;
+        logger.log("Test message");
+        while (sink.count < target) {
+            // wait for the consumer to deliver the event
+        }
+    }
+
+    private static class CountingAppender implements Appender {
+
+        // only ever written by the consumer thread
+        private volatile long count;
+
+        @Override
+        public void accept(LogEvent event) {
+            count++;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+            .include(AsyncAppenderBenchmark.class.getName())
+            .warmupIterations(10)
+            .measurementIterations(10)
+            .forks(1)
+            .build();
+
+        new Runner(options).run();
+    }
+
+}
@@ -23,6 +23,7 @@ import org.musigma.logging.layout.SimpleAsciiLayout;
 import org.musigma.logging.impl.SimpleLogger;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
@@ -34,6 +35,7 @@ import org.openjdk.jmh.runner.options.OptionsBuilder;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
 
 /**
  *
@@ -41,6 +43,9 @@ import java.nio.file.Paths;
 @State(Scope.Benchmark)
 public class AsyncFileChannelAppenderBenchmark {
 
+    @Param({"8192", "65536"})
+    public int bufferSize;
+
     private Logger logger;
     private Appender appender;
 
@@ -49,7 +54,9 @@ public class AsyncFileChannelAppenderBenchmark {
         Path logFile = Paths.get("target", "test.log");
 //        Layout layout = new SimpleLayout(StandardCharsets.ISO_8859_1);
         Layout layout = new SimpleAsciiLayout();
-        appender = new AsyncFileChannelAppender(logFile, layout);
+        appender = new AsyncFileChannelAppender(logFile, layout, bufferSize,
+            AsyncFileChannelAppender.DEFAULT_BUFFER_COUNT, AsyncFileChannelAppender.DEFAULT_LINGER_MILLIS,
+            TimeUnit.MILLISECONDS);
         logger = new SimpleLogger(appender);
     }
 
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2017 Matt Sicker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.musigma.logging.jmh;
+
+import org.musigma.logging.appender.CompressedFileChannelAppender;
+import org.musigma.logging.layout.Layout;
+import org.musigma.logging.Logger;
+import org.musigma.logging.layout.SimpleAsciiLayout;
+import org.musigma.logging.impl.SimpleLogger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Compare with {@link FileChannelAppenderBenchmark}. Prints the compression ratio and the time spent compressing per
+ * uncompressed byte after every iteration.
+ */
+@State(Scope.Benchmark)
+public class CompressedFileChannelAppenderBenchmark {
+
+    @Param({"1", "6"})
+    public int level;
+
+    private Logger logger;
+    private CompressedFileChannelAppender appender;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        Path logFile = Paths.get("target", "test.log.gz");
+        Layout layout = new SimpleAsciiLayout();
+        appender = new CompressedFileChannelAppender(logFile, layout, level);
+        logger = new SimpleLogger(appender);
+    }
+
+    @TearDown(Level.Iteration)
+    public void teardown() throws Exception {
+        appender.close();
+        System.out.printf("compression ratio %.2f, %.2f ns/byte%n", appender.getCompressionRatio(),
+            (double) appender.getCompressionNanos() / Math.max(1, appender.getUncompressedBytes()));
+    }
+
+    @Benchmark
+    public void logToFile() {
+        logger.log("Test message");
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+            .include(CompressedFileChannelAppenderBenchmark.class.getName())
+            .warmupIterations(10)
+            .measurementIterations(10)
+            .forks(1)
+            .build();
+
+        new Runner(options).run();
+    }
+
+}
@@ -17,12 +17,14 @@ package org.musigma.logging.jmh;
 
 import org.musigma.logging.appender.Appender;
 import org.musigma.logging.appender.FileChannelAppender;
+import org.musigma.logging.appender.FlushPolicy;
 import org.musigma.logging.layout.Layout;
 import org.musigma.logging.Logger;
 import org.musigma.logging.layout.SimpleAsciiLayout;
 import org.musigma.logging.impl.SimpleLogger;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
@@ -34,6 +36,7 @@ import org.openjdk.jmh.runner.options.OptionsBuilder;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
 
 /**
  *
@@ -41,6 +44,9 @@ import java.nio.file.Paths;
 @State(Scope.Benchmark)
 public class FileChannelAppenderBenchmark {
 
+    @Param({"1", "8"})
+    public int gatherSegments;
+
     private Logger logger;
     private Appender appender;
 
@@ -49,7 +55,8 @@ public class FileChannelAppenderBenchmark {
         Path logFile = Paths.get("target", "test.log");
 //        Layout layout = new SimpleLayout(StandardCharsets.ISO_8859_1);
         Layout layout = new SimpleAsciiLayout();
-        appender = new FileChannelAppender(logFile, layout);
+        appender = new FileChannelAppender(logFile, layout, FlushPolicy.onClose(), 0, TimeUnit.MILLISECONDS,
+            gatherSegments);
         logger = new SimpleLogger(appender);
     }
 
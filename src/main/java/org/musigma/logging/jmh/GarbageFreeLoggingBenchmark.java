@@ -0,0 +1,87 @@
+/*
+ * Copyright 2017 Matt Sicker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.musigma.logging.jmh;
+
+import org.musigma.logging.Logger;
+import org.musigma.logging.appender.Appender;
+import org.musigma.logging.appender.AsyncAppender;
+import org.musigma.logging.appender.FileOutputStreamAppender;
+import org.musigma.logging.impl.SimpleLogger;
+import org.musigma.logging.impl.SystemClock;
+import org.musigma.logging.layout.SimpleAsciiLayout;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Checks that logging through a garbage-free {@link SimpleLogger} doesn't allocate in steady state, both with a
+ * synchronous appender and behind an {@link AsyncAppender}. Look for {@code gc.alloc.rate.norm} close to 0 B/op in
+ * the GC profiler output.
+ */
+@State(Scope.Benchmark)
+public class GarbageFreeLoggingBenchmark {
+
+    @Param({"sync", "async"})
+    public String mode;
+
+    private Logger logger;
+    private Appender appender;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        Path logFile = Paths.get("target", "test.log");
+        appender = new FileOutputStreamAppender(logFile, new SimpleAsciiLayout());
+        if ("async".equals(mode)) {
+            appender = new AsyncAppender(appender);
+        }
+        logger = new SimpleLogger(appender, new SystemClock(), true);
+    }
+
+    @TearDown(Level.Iteration)
+    public void teardown() throws Exception {
+        appender.close();
+    }
+
+    @Benchmark
+    public void logToFile() {
+        logger.log("Test message");
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+            .include(GarbageFreeLoggingBenchmark.class.getName())
+            .addProfiler(GCProfiler.class)
+            .warmupIterations(10)
+            .measurementIterations(10)
+            .forks(1)
+            .build();
+
+        new Runner(options).run();
+    }
+
+}
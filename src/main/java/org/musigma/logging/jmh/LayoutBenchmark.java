@@ -15,13 +15,18 @@
  */
 package org.musigma.logging.jmh;
 
+import org.musigma.logging.layout.BinaryLayout;
+import org.musigma.logging.layout.Latin1Layout;
 import org.musigma.logging.layout.Layout;
 import org.musigma.logging.impl.LogEvent;
 import org.musigma.logging.layout.SimpleAsciiLayout;
 import org.musigma.logging.layout.SimpleLayout;
+import org.musigma.logging.layout.Utf8Layout;
 import org.musigma.logging.util.Buffered;
 import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
 import org.openjdk.jmh.runner.Runner;
 import org.openjdk.jmh.runner.RunnerException;
@@ -32,14 +37,42 @@ import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 
 /**
- *
+ * Compares the layouts on messages of different character sets. Layouts that can't represent a message set (e.g.,
+ * ISO-8859-1 and CJK) still get measured, they just replace or mangle the characters they can't encode.
  */
 @State(Scope.Benchmark)
 public class LayoutBenchmark {
 
+    @Param({"ascii", "latin1", "cjk", "emoji"})
+    public String messageSet;
+
     private Layout simpleLayout = new SimpleLayout(StandardCharsets.ISO_8859_1);
+    private Layout simpleUtf8Layout = new SimpleLayout(StandardCharsets.UTF_8);
     private Layout asciiLayout = new SimpleAsciiLayout();
-    private LogEvent event = new LogEvent("Test message", System.currentTimeMillis());
+    private Layout utf8Layout = new Utf8Layout();
+    private Layout latin1Layout = new Latin1Layout();
+    private Layout binaryLayout = new BinaryLayout();
+    private LogEvent event;
+
+    @Setup
+    public void setup() {
+        event = new LogEvent(message(messageSet), System.currentTimeMillis());
+    }
+
+    private static String message(String messageSet) {
+        switch (messageSet) {
+            case "ascii":
+                return "User alice logged in from 10.0.0.1; session 42 created, status=ok";
+            case "latin1":
+                return "Grüße aus Köln: Café, crème brûlée, déjà vu, naïve façade, 25°C";
+            case "cjk":
+                return "用户登录成功，会话已创建，状态正常。日志消息测试";
+            case "emoji":
+                return "Deploy finished \uD83D\uDE80 all checks passed \u2705 time for coffee \u2615 \uD83D\uDE00";
+            default:
+                throw new IllegalArgumentException("Unknown message set: " + messageSet);
+        }
+    }
 
     @State(Scope.Thread)
     public static class ReusableBuffer {
@@ -73,6 +106,53 @@ public class LayoutBenchmark {
         buffer.buf.clear();
     }
 
+    @Benchmark
+    public void simpleLayoutEncode3(ExtensibleBuffer buffer) {
+        simpleLayout.encode(event, buffer);
+        buffer.drain();
+    }
+
+    @Benchmark
+    public void simpleUtf8LayoutEncode2(ReusableBuffer buffer) {
+        simpleUtf8Layout.encode(event, buffer.buf);
+        buffer.buf.clear();
+    }
+
+    @Benchmark
+    public void simpleUtf8LayoutEncode3(ExtensibleBuffer buffer) {
+        simpleUtf8Layout.encode(event, buffer);
+        buffer.drain();
+    }
+
+    @Benchmark
+    public ByteBuffer utf8LayoutEncode1() {
+        return utf8Layout.encode(event);
+    }
+
+    @Benchmark
+    public void utf8LayoutEncode2(ReusableBuffer buffer) {
+        utf8Layout.encode(event, buffer.buf);
+        buffer.buf.clear();
+    }
+
+    @Benchmark
+    public void utf8LayoutEncode3(ExtensibleBuffer buffer) {
+        utf8Layout.encode(event, buffer);
+        buffer.drain();
+    }
+
+    @Benchmark
+    public void latin1LayoutEncode2(ReusableBuffer buffer) {
+        latin1Layout.encode(event, buffer.buf);
+        buffer.buf.clear();
+    }
+
+    @Benchmark
+    public void latin1LayoutEncode3(ExtensibleBuffer buffer) {
+        latin1Layout.encode(event, buffer);
+        buffer.drain();
+    }
+
     @Benchmark
     public ByteBuffer asciiLayoutEncode1() {
         return asciiLayout.encode(event);
@@ -90,6 +170,23 @@ public class LayoutBenchmark {
         buffer.drain();
     }
 
+    @Benchmark
+    public ByteBuffer binaryLayoutEncode1() {
+        return binaryLayout.encode(event);
+    }
+
+    @Benchmark
+    public void binaryLayoutEncode2(ReusableBuffer buffer) {
+        binaryLayout.encode(event, buffer.buf);
+        buffer.buf.clear();
+    }
+
+    @Benchmark
+    public void binaryLayoutEncode3(ExtensibleBuffer buffer) {
+        binaryLayout.encode(event, buffer);
+        buffer.drain();
+    }
+
     public static void main(String[] args) throws RunnerException {
         Options options = new OptionsBuilder()
             .include(LayoutBenchmark.class.getName())
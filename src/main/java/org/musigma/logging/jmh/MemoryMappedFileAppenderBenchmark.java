@@ -23,6 +23,7 @@ import org.musigma.logging.layout.Layout;
 import org.musigma.logging.layout.SimpleAsciiLayout;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
@@ -41,6 +42,10 @@ import java.nio.file.Paths;
 @State(Scope.Benchmark)
 public class MemoryMappedFileAppenderBenchmark {
 
+    // inline: remap on the logging thread; premap: map the next region in the background; prefault: also touch it
+    @Param({"inline", "premap", "prefault"})
+    public String remapMode;
+
     private Logger logger;
     private Appender appender;
 
@@ -49,7 +54,8 @@ public class MemoryMappedFileAppenderBenchmark {
         Path logFile = Paths.get("target", "test.log");
 //        Layout layout = new SimpleLayout(StandardCharsets.ISO_8859_1);
         Layout layout = new SimpleAsciiLayout();
-        appender = new MemoryMappedFileAppender(logFile, layout, 512 * 1024);
+        appender = new MemoryMappedFileAppender(logFile, layout, 512 * 1024, !"inline".equals(remapMode),
+            "prefault".equals(remapMode));
         logger = new SimpleLogger(appender);
     }
 
@@ -15,6 +15,7 @@
  */
 package org.musigma.logging.jmh;
 
+import org.musigma.logging.util.TimestampEncoder;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.State;
@@ -22,6 +23,7 @@ import org.openjdk.jmh.runner.Runner;
 import org.openjdk.jmh.runner.RunnerException;
 import org.openjdk.jmh.runner.options.OptionsBuilder;
 
+import java.nio.ByteBuffer;
 import java.time.Instant;
 import java.util.Date;
 
@@ -32,6 +34,18 @@ import java.util.Date;
 public class TimestampBenchmark {
 
     private long timestamp = System.currentTimeMillis();
+    private TimestampEncoder timestampEncoder = TimestampEncoder.getInstance();
+
+    @State(Scope.Thread)
+    public static class ReusableBuffer {
+        private ByteBuffer buf = ByteBuffer.allocateDirect(64);
+    }
+
+    @State(Scope.Thread)
+    public static class AdvancingClock {
+        // advances by a millisecond per call so that seconds and minutes roll over like in a real log
+        private long timestamp = System.currentTimeMillis();
+    }
 
     @Benchmark
     public String viaInstantToString() {
@@ -43,6 +57,23 @@ public class TimestampBenchmark {
         return new Date(timestamp).toString();
     }
 
+    @Benchmark
+    public String viaTimestampEncoderFormat() {
+        return timestampEncoder.format(timestamp);
+    }
+
+    @Benchmark
+    public void viaTimestampEncoderEncode(ReusableBuffer buffer) {
+        buffer.buf.clear();
+        timestampEncoder.encode(timestamp, buffer.buf);
+    }
+
+    @Benchmark
+    public void viaTimestampEncoderEncodeAdvancing(ReusableBuffer buffer, AdvancingClock clock) {
+        buffer.buf.clear();
+        timestampEncoder.encode(clock.timestamp++, buffer.buf);
+    }
+
     public static void main(String[] args) throws RunnerException {
         new Runner(new OptionsBuilder()
             .include(TimestampBenchmark.class.getName())
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2017 Matt Sicker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.musigma.logging.layout;
+
+import org.musigma.logging.impl.LogEvent;
+import org.musigma.logging.util.Buffered;
+import org.musigma.logging.util.CharEncoding;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Layout writing compact binary records instead of text, so that no time is spent formatting timestamps at log time.
+ * Each record consists of the following big endian fields:
+ * <ol>
+ * <li>the length of the rest of the record as an {@code int}</li>
+ * <li>the timestamp in epoch milliseconds as a {@code long}</li>
+ * <li>the length of the message in bytes as an {@code int}</li>
+ * <li>the message encoded as UTF-8</li>
+ * </ol>
+ * Use a {@link BinaryLogReader} to read the records back or to turn them into text in the format of the other layouts.
+ */
+public class BinaryLayout implements Layout {
+
+    /**
+     * Length of the fields preceding the message.
+     */
+    public static final int HEADER_SIZE = 16;
+
+    @Override
+    public ByteBuffer encode(LogEvent event) {
+        ByteBuffer dst = ByteBuffer.allocate(HEADER_SIZE + CharEncoding.utf8Length(event.getMessage()));
+        encode(event, dst);
+        dst.flip();
+        return dst;
+    }
+
+    @Override
+    public void encode(LogEvent event, ByteBuffer dst) {
+        CharSequence message = event.getMessage();
+        int length = CharEncoding.utf8Length(message);
+        if (HEADER_SIZE + length > dst.remaining()) {
+            throw new BufferOverflowException();
+        }
+        putInt(length + HEADER_SIZE - Integer.BYTES, dst);
+        putLong(event.getTimestamp(), dst);
+        putInt(length, dst);
+        CharEncoding.encodeUtf8(message, dst);
+    }
+
+    @Override
+    public void encode(LogEvent event, Buffered<ByteBuffer> destination) {
+        CharSequence message = event.getMessage();
+        int length = CharEncoding.utf8Length(message);
+        ByteBuffer buf = destination.buffer();
+        if (buf.remaining() < HEADER_SIZE) {
+            buf = destination.drain();
+        }
+        if (buf.remaining() >= HEADER_SIZE) {
+            putInt(length + HEADER_SIZE - Integer.BYTES, buf);
+            putLong(event.getTimestamp(), buf);
+            putInt(length, buf);
+        } else {
+            // tiny buffer
+            putBytes(length + HEADER_SIZE - Integer.BYTES, Integer.BYTES, destination);
+            putBytes(event.getTimestamp(), Long.BYTES, destination);
+            putBytes(length, Integer.BYTES, destination);
+        }
+        CharEncoding.encodeUtf8(message, destination);
+    }
+
+    static void putInt(int value, ByteBuffer dst) {
+        dst.putInt(dst.order() == ByteOrder.BIG_ENDIAN ? value : Integer.reverseBytes(value));
+    }
+
+    static void putLong(long value, ByteBuffer dst) {
+        dst.putLong(dst.order() == ByteOrder.BIG_ENDIAN ? value : Long.reverseBytes(value));
+    }
+
+    static void putBytes(long value, int bytes, Buffered<ByteBuffer> destination) {
+        for (int shift = (bytes - 1) * 8; shift >= 0; shift -= 8) {
+            CharEncoding.put((byte) (value >>> shift), destination);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2017 Matt Sicker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.musigma.logging.layout;
+
+import org.musigma.logging.impl.LogEvent;
+import org.musigma.logging.util.Buffered;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the records written by a {@link BinaryLayout}. Reading stops at the end of the input or at a record length of
+ * zero, which is where the zero padding of a memory mapped log file starts. A record cut short by the end of a stream
+ * (e.g., after a crash) is ignored. Record lengths are checked against a maximum and, when reading a
+ * {@link FileChannel}, against the size of the file, so that a corrupt length fails with an {@link IOException} instead
+ * of allocating a huge buffer.
+ *
+ * <p>Run this class with binary log files as arguments to print them as text.</p>
+ */
+public class BinaryLogReader implements AutoCloseable {
+
+    public static final int DEFAULT_MAX_RECORD_LENGTH = 64 * 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ReadableByteChannel channel;
+    private final int maxRecordLength;
+    // always in read mode
+    private ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+    // input offset of the start of the buffer
+    private long offset;
+    private boolean eof;
+
+    public BinaryLogReader(ReadableByteChannel channel) {
+        this(channel, DEFAULT_MAX_RECORD_LENGTH);
+    }
+
+    /**
+     * @param maxRecordLength largest record length (excluding the length field itself) considered valid
+     */
+    public BinaryLogReader(ReadableByteChannel channel, int maxRecordLength) {
+        if (maxRecordLength < BinaryLayout.HEADER_SIZE - Integer.BYTES) {
+            throw new IllegalArgumentException("Maximum record length too small: " + maxRecordLength);
+        }
+        this.channel = channel;
+        this.maxRecordLength = maxRecordLength;
+        buf.flip();
+    }
+
+    public static BinaryLogReader open(Path logFile) throws IOException {
+        return new BinaryLogReader(FileChannel.open(logFile, StandardOpenOption.READ));
+    }
+
+    /**
+     * Reads the next record.
+     *
+     * @return the next event, or {@code null} at the end of the log
+     * @throws IOException if reading fails or the record is malformed
+     */
+    public LogEvent next() throws IOException {
+        if (!fill(Integer.BYTES)) {
+            return null;
+        }
+        int length = buf.getInt(buf.position());
+        if (length == 0) {
+            return null;
+        }
+        if (length < BinaryLayout.HEADER_SIZE - Integer.BYTES || length > maxRecordLength) {
+            throw new IOException("Invalid record length " + length + " at offset " + position());
+        }
+        if (channel instanceof FileChannel && length > ((FileChannel) channel).size() - position() - Integer.BYTES) {
+            throw new IOException("Record length " + length + " at offset " + position() + " exceeds the file size");
+        }
+        if (!fill(Integer.BYTES + length)) {
+            return null;
+        }
+        long recordPosition = position();
+        buf.getInt();
+        long timestamp = buf.getLong();
+        int messageLength = buf.getInt();
+        if (messageLength != length - (BinaryLayout.HEADER_SIZE - Integer.BYTES)) {
+            throw new IOException("Inconsistent message length " + messageLength + " at offset " + recordPosition);
+        }
+        String message = new String(buf.array(), buf.arrayOffset() + buf.position(), messageLength,
+            StandardCharsets.UTF_8);
+        buf.position(buf.position() + messageLength);
+        return new LogEvent(message, timestamp);
+    }
+
+    /**
+     * Returns the input offset of the next record.
+     */
+    public long position() {
+        return offset + buf.position();
+    }
+
+    /**
+     * Makes sure the buffer holds at least the given number of bytes, unless the input ends before that.
+     */
+    private boolean fill(int bytes) throws IOException {
+        if (buf.remaining() >= bytes) {
+            return true;
+        }
+        offset += buf.position();
+        if (bytes > buf.capacity()) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(bytes, buf.capacity() * 2));
+            bigger.put(buf);
+            buf = bigger;
+        } else {
+            buf.compact();
+        }
+        while (buf.position() < bytes && !eof) {
+            if (channel.read(buf) < 0) {
+                eof = true;
+            }
+        }
+        buf.flip();
+        return buf.remaining() >= bytes;
+    }
+
+    /**
+     * Formats all remaining records with the given layout, e.g., a {@link Utf8Layout} for the usual text format.
+     *
+     * @return the number of records written
+     */
+    public long decodeTo(Layout layout, WritableByteChannel out) throws IOException {
+        ChannelDestination destination = new ChannelDestination(out);
+        long count = 0;
+        LogEvent event;
+        while ((event = next()) != null) {
+            layout.encode(event, destination);
+            count++;
+        }
+        destination.flush();
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    public static void main(String[] args) throws IOException {
+        WritableByteChannel out = Channels.newChannel(System.out);
+        Layout layout = new Utf8Layout();
+        for (String arg : args) {
+            try (BinaryLogReader reader = open(Paths.get(arg))) {
+                reader.decodeTo(layout, out);
+            }
+        }
+        System.out.flush();
+    }
+
+    private static final class ChannelDestination implements Buffered<ByteBuffer> {
+        private final WritableByteChannel out;
+        private final ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+
+        private ChannelDestination(WritableByteChannel out) {
+            this.out = out;
+        }
+
+        @Override
+        public ByteBuffer buffer() {
+            return buf;
+        }
+
+        @Override
+        public ByteBuffer drain() {
+            try {
+                flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return buf;
+        }
+
+        private void flush() throws IOException {
+            buf.flip();
+            while (buf.hasRemaining()) {
+                out.write(buf);
+            }
+            buf.clear();
+        }
+    }
+}
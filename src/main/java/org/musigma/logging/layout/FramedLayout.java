@@ -0,0 +1,156 @@
+/*
+ * Copyright 2017 Matt Sicker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.musigma.logging.layout;
+
+import org.musigma.logging.impl.LogEvent;
+import org.musigma.logging.util.Buffered;
+import org.musigma.logging.util.Crc32c;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.zip.Checksum;
+
+/**
+ * Wraps the records of another layout (usually a {@link BinaryLayout}) in frames that make torn writes detectable.
+ * Each frame starts with a header of the following big endian fields, followed by the record:
+ * <ol>
+ * <li>the magic number {@value #MAGIC}, which starts with a byte that never occurs in UTF-8 text</li>
+ * <li>the length of the record as an {@code int}</li>
+ * <li>the {@linkplain Crc32c CRC-32C} of the record as an {@code int}</li>
+ * </ol>
+ * A {@link FramedLogReader} verifies the checksums and resynchronizes on the next magic number after damaged data,
+ * e.g., the holes a crash can leave behind in files written by concurrent positional writes.
+ *
+ * <p>Since the checksum must be known before the record is written, records are encoded into a thread local buffer
+ * first and then copied to the destination.</p>
+ */
+public class FramedLayout implements Layout {
+
+    public static final int MAGIC = 0xfe4c4f47; // 0xfe 'L' 'O' 'G'
+
+    /**
+     * Length of the frame header preceding each record.
+     */
+    public static final int HEADER_SIZE = 12;
+
+    private static final int INITIAL_SIZE = 8192;
+    // buffers that grew beyond this for a huge event get replaced again afterwards
+    private static final int MAX_RETAINED_SIZE = 256 * 1024;
+
+    private final Layout layout;
+    private final ThreadLocal<Scratch> scratchLocal = ThreadLocal.withInitial(Scratch::new);
+
+    public FramedLayout(Layout layout) {
+        this.layout = layout;
+    }
+
+    @Override
+    public ByteBuffer encode(LogEvent event) {
+        Scratch scratch = encodeRecord(event);
+        ByteBuffer dst = ByteBuffer.allocate(HEADER_SIZE + scratch.buf.remaining());
+        putHeader(scratch, dst);
+        dst.put(scratch.buf);
+        dst.flip();
+        return dst;
+    }
+
+    @Override
+    public void encode(LogEvent event, ByteBuffer dst) {
+        Scratch scratch = encodeRecord(event);
+        if (HEADER_SIZE + scratch.buf.remaining() > dst.remaining()) {
+            throw new BufferOverflowException();
+        }
+        putHeader(scratch, dst);
+        dst.put(scratch.buf);
+    }
+
+    @Override
+    public void encode(LogEvent event, Buffered<ByteBuffer> destination) {
+        Scratch scratch = encodeRecord(event);
+        ByteBuffer src = scratch.buf;
+        ByteBuffer buf = destination.buffer();
+        if (buf.remaining() < HEADER_SIZE) {
+            buf = destination.drain();
+        }
+        if (buf.remaining() >= HEADER_SIZE) {
+            putHeader(scratch, buf);
+        } else {
+            // tiny buffer
+            BinaryLayout.putBytes(MAGIC, Integer.BYTES, destination);
+            BinaryLayout.putBytes(src.remaining(), Integer.BYTES, destination);
+            BinaryLayout.putBytes(scratch.crc, Integer.BYTES, destination);
+            buf = destination.buffer();
+        }
+        int limit = src.limit();
+        while (src.hasRemaining()) {
+            if (!buf.hasRemaining()) {
+                buf = destination.drain();
+            }
+            src.limit(src.position() + Math.min(src.remaining(), buf.remaining()));
+            buf.put(src);
+            src.limit(limit);
+        }
+    }
+
+    private Scratch encodeRecord(LogEvent event) {
+        Scratch scratch = scratchLocal.get();
+        scratch.reset();
+        layout.encode(event, scratch);
+        ByteBuffer buf = scratch.buf;
+        buf.flip();
+        scratch.checksum.reset();
+        scratch.checksum.update(buf.array(), buf.arrayOffset(), buf.limit());
+        scratch.crc = (int) scratch.checksum.getValue();
+        return scratch;
+    }
+
+    private static void putHeader(Scratch scratch, ByteBuffer dst) {
+        BinaryLayout.putInt(MAGIC, dst);
+        BinaryLayout.putInt(scratch.buf.remaining(), dst);
+        BinaryLayout.putInt(scratch.crc, dst);
+    }
+
+    /**
+     * Growable heap buffer for encoding a whole record.
+     */
+    private static final class Scratch implements Buffered<ByteBuffer> {
+        private final Checksum checksum = Crc32c.newChecksum();
+        private ByteBuffer buf = ByteBuffer.allocate(INITIAL_SIZE);
+        private int crc;
+
+        @Override
+        public ByteBuffer buffer() {
+            return buf;
+        }
+
+        @Override
+        public ByteBuffer drain() {
+            ByteBuffer bigger = ByteBuffer.allocate(buf.capacity() * 2);
+            buf.flip();
+            bigger.put(buf);
+            buf = bigger;
+            return buf;
+        }
+
+        private void reset() {
+            if (buf.capacity() > MAX_RETAINED_SIZE) {
+                buf = ByteBuffer.allocate(INITIAL_SIZE);
+            } else {
+                buf.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2017 Matt Sicker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.musigma.logging.layout;
+
+import org.musigma.logging.util.Crc32c;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.Checksum;
+
+/**
+ * Reads and verifies the frames written by a {@link FramedLayout}. The file is read through large memory mapped
+ * windows and checksums are computed on the mapped data directly, so verifying runs at about the speed of the disk.
+ * Windows are not unmapped explicitly, since returned records may still refer to them; the garbage collector unmaps
+ * them once they are no longer referenced.
+ *
+ * <p>When a frame is damaged (bad magic number, impossible length or checksum mismatch), the reader skips ahead to the
+ * next occurrence of the magic number that starts a valid frame and reports the skipped range to its
+ * {@link DamageListener}. Zero bytes at the end of the file, such as the padding of a memory mapped log file, are not
+ * considered damage.</p>
+ *
+ * <p>Run this class with log files as arguments to verify them.</p>
+ */
+public class FramedLogReader implements AutoCloseable {
+
+    private static final int WINDOW_SIZE = 64 * 1024 * 1024;
+    private static final byte MAGIC_START = (byte) (FramedLayout.MAGIC >>> 24);
+
+    /**
+     * Gets told about damaged parts of a file.
+     */
+    public interface DamageListener {
+        /**
+         * @param offset     file offset of the damaged range
+         * @param length     length of the damaged range
+         * @param zeroFilled whether the range consists of zero bytes only, like a hole left behind by a write that
+         *                   never happened
+         */
+        void damaged(long offset, long length, boolean zeroFilled);
+    }
+
+    private final FileChannel channel;
+    private final long size;
+    private final DamageListener listener;
+    private final Checksum checksum = Crc32c.newChecksum();
+    private MappedByteBuffer window;
+    private long windowStart;
+    // file offset of the next frame
+    private long position;
+    private long recordPosition = -1;
+    private long damagedBytes;
+    private int damagedRanges;
+
+    public FramedLogReader(Path logFile) throws IOException {
+        this(logFile, (offset, length, zeroFilled) -> {
+        });
+    }
+
+    public FramedLogReader(Path logFile, DamageListener listener) throws IOException {
+        this.channel = FileChannel.open(logFile, StandardOpenOption.READ);
+        this.size = channel.size();
+        this.listener = listener;
+    }
+
+    /**
+     * Reads the next valid record, skipping damaged data.
+     *
+     * @return a read only view of the record in the mapped file, or {@code null} at the end of the file
+     */
+    public ByteBuffer next() throws IOException {
+        long damageStart = -1;
+        while (position + FramedLayout.HEADER_SIZE <= size) {
+            ByteBuffer record = frameAt(position);
+            if (record != null) {
+                if (damageStart >= 0) {
+                    damaged(damageStart, position, false);
+                }
+                recordPosition = position;
+                position += FramedLayout.HEADER_SIZE + record.remaining();
+                return record.slice().asReadOnlyBuffer();
+            }
+            if (damageStart < 0) {
+                damageStart = position;
+            }
+            position = nextMagic(position + 1);
+        }
+        if (damageStart < 0 && position < size) {
+            damageStart = position;
+        }
+        if (damageStart >= 0) {
+            damaged(damageStart, size, true);
+        }
+        position = size;
+        return null;
+    }
+
+    /**
+     * Returns the record of the frame at the given position, or {@code null} if there is no valid frame.
+     */
+    private ByteBuffer frameAt(long offset) throws IOException {
+        ByteBuffer header = map(offset, FramedLayout.HEADER_SIZE);
+        int index = header.position();
+        if (header.getInt(index) != FramedLayout.MAGIC) {
+            return null;
+        }
+        int length = header.getInt(index + 4);
+        if (length < 0 || length > size - offset - FramedLayout.HEADER_SIZE) {
+            return null;
+        }
+        int crc = header.getInt(index + 8);
+        ByteBuffer record = map(offset + FramedLayout.HEADER_SIZE, length);
+        checksum.reset();
+        Crc32c.update(checksum, record.duplicate());
+        return (int) checksum.getValue() == crc ? record : null;
+    }
+
+    /**
+     * Returns the position of the next byte that could start a frame, or the end of the file.
+     */
+    private long nextMagic(long from) throws IOException {
+        long offset = from;
+        while (offset < size) {
+            ByteBuffer buf = map(offset, (int) Math.min(size - offset, WINDOW_SIZE));
+            for (int i = buf.position(), end = buf.limit(); i < end; i++) {
+                if (buf.get(i) == MAGIC_START) {
+                    return offset + i - buf.position();
+                }
+            }
+            offset += buf.remaining();
+        }
+        return size;
+    }
+
+    /**
+     * Reports a damaged range; when the range extends to the end of the file, it is only reported if it contains
+     * anything else than zero bytes.
+     */
+    private void damaged(long start, long end, boolean atEnd) throws IOException {
+        boolean zeroFilled = isZeroFilled(start, end);
+        if (atEnd && zeroFilled) {
+            return;
+        }
+        damagedRanges++;
+        damagedBytes += end - start;
+        listener.damaged(start, end - start, zeroFilled);
+    }
+
+    private boolean isZeroFilled(long start, long end) throws IOException {
+        long offset = start;
+        while (offset < end) {
+            ByteBuffer buf = map(offset, (int) Math.min(end - offset, WINDOW_SIZE));
+            for (int i = buf.position(), last = buf.limit(); i < last; i++) {
+                if (buf.get(i) != 0) {
+                    return false;
+                }
+            }
+            offset += buf.remaining();
+        }
+        return true;
+    }
+
+    /**
+     * Returns a view of the given range of the file, mapping a new window if needed.
+     */
+    private ByteBuffer map(long offset, int length) throws IOException {
+        if (window == null || offset < windowStart || offset + length > windowStart + window.capacity()) {
+            long windowLength = Math.max(length, Math.min(size - offset, WINDOW_SIZE));
+            window = channel.map(FileChannel.MapMode.READ_ONLY, offset, windowLength);
+            windowStart = offset;
+        }
+        ByteBuffer view = window.duplicate();
+        view.position((int) (offset - windowStart)).limit((int) (offset - windowStart) + length);
+        return view;
+    }
+
+    /**
+     * Returns the file offset of the frame of the record returned last, or -1 if there was none.
+     */
+    public long getRecordPosition() {
+        return recordPosition;
+    }
+
+    public long getDamagedBytes() {
+        return damagedBytes;
+    }
+
+    public int getDamagedRanges() {
+        return damagedRanges;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    public static void main(String[] args) throws IOException {
+        for (String arg : args) {
+            DamageListener listener = (offset, length, zeroFilled) -> System.out.println(arg + ": " + length +
+                (zeroFilled ? " zero bytes" : " damaged bytes") + " at offset " + offset);
+            long records = 0;
+            long start = System.nanoTime();
+            try (FramedLogReader reader = new FramedLogReader(Paths.get(arg), listener)) {
+                while (reader.next() != null) {
+                    records++;
+                }
+                long millis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+                System.out.println(arg + ": " + records + " valid records, " + reader.getDamagedRanges() +
+                    " damaged ranges (" + reader.getDamagedBytes() + " bytes), verified " + reader.size +
+                    " bytes in " + millis + " ms");
+            }
+        }
+    }
+}
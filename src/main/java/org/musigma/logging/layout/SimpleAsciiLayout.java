@@ -17,10 +17,11 @@ package org.musigma.logging.layout;
 
 import org.musigma.logging.impl.LogEvent;
 import org.musigma.logging.util.Buffered;
+import org.musigma.logging.util.CharEncoding;
+import org.musigma.logging.util.TimestampEncoder;
 
 import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
-import java.util.Date;
 
 /**
  * Simple layout using the same format as {@link SimpleLayout}, but this layout assumes all messages are encoded in
@@ -28,19 +29,18 @@ import java.util.Date;
  * Java rules of casting a {@code char} to a {@code byte}.
  */
 public class SimpleAsciiLayout implements Layout {
+
+    private final TimestampEncoder timestampEncoder = TimestampEncoder.getInstance();
+
     @Override
     public ByteBuffer encode(LogEvent event) {
-        String timestamp = new Date(event.getTimestamp()).toString();
+        long timestamp = event.getTimestamp();
         CharSequence message = event.getMessage();
-        ByteBuffer dst = ByteBuffer.allocate(1 + timestamp.length() + 2 + message.length() + 1);
+        ByteBuffer dst = ByteBuffer.allocate(1 + timestampEncoder.length(timestamp) + 2 + message.length() + 1);
         dst.put((byte) '[');
-        for (int i = 0; i < timestamp.length(); i++) {
-            dst.put((byte) timestamp.charAt(i));
-        }
+        timestampEncoder.encode(timestamp, dst);
         dst.put((byte) ']').put((byte) ' ');
-        for (int i = 0; i < message.length(); i++) {
-            dst.put((byte) message.charAt(i));
-        }
+        CharEncoding.encodeAscii(message, 0, message.length(), dst);
         dst.put((byte) '\n');
         dst.flip();
         return dst;
@@ -48,40 +48,30 @@ public class SimpleAsciiLayout implements Layout {
 
     @Override
     public void encode(LogEvent event, ByteBuffer dst) {
-        String timestamp = new Date(event.getTimestamp()).toString();
+        long timestamp = event.getTimestamp();
         CharSequence message = event.getMessage();
-        if (4 + timestamp.length() + message.length() > dst.remaining()) {
+        if (4 + timestampEncoder.length(timestamp) + message.length() > dst.remaining()) {
             throw new BufferOverflowException();
         }
         dst.put((byte) '[');
-        for (int i = 0; i < timestamp.length(); i++) {
-            dst.put((byte) timestamp.charAt(i));
-        }
+        timestampEncoder.encode(timestamp, dst);
         dst.put((byte) ']').put((byte) ' ');
-        for (int i = 0; i < message.length(); i++) {
-            dst.put((byte) message.charAt(i));
-        }
+        CharEncoding.encodeAscii(message, 0, message.length(), dst);
         dst.put((byte) '\n');
     }
 
+    /**
+     * Streams the event into the destination without formatting it first. The destination is only drained once it is
+     * completely full, so an event may be split across two drains.
+     */
     @Override
     public void encode(LogEvent event, Buffered<ByteBuffer> destination) {
-        // TODO: reusable StringBuilders (though using ThreadLocal may not work properly with AsyncFileChannelAppender)
-        StringBuilder sb = new StringBuilder(32 + event.getMessage().length());
-        // FIXME: while the layout can keep its own StringBuilders, why exactly does the LogEvent use it?
-        event.formatTo(sb);
-        int position = 0;
-        int remaining = sb.length();
-        while (remaining > 0) {
-            ByteBuffer buf = destination.buffer();
-            if (remaining > buf.remaining()) {
-                buf = destination.drain();
-            }
-            int chunk = Math.min(remaining, buf.remaining());
-            for (int i = 0; i < chunk; i++) {
-                buf.put((byte) sb.charAt(position++));
-            }
-            remaining -= chunk;
-        }
+        long timestamp = event.getTimestamp();
+        CharEncoding.put((byte) '[', destination);
+        timestampEncoder.encode(timestamp, destination);
+        CharEncoding.put((byte) ']', destination);
+        CharEncoding.put((byte) ' ', destination);
+        CharEncoding.encodeAscii(event.getMessage(), destination);
+        CharEncoding.put((byte) '\n', destination);
     }
 }
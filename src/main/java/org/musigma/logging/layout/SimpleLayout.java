@@ -18,27 +18,38 @@ package org.musigma.logging.layout;
 import org.musigma.logging.impl.LogEvent;
 import org.musigma.logging.util.Buffered;
 import org.musigma.logging.util.CharSeq;
+import org.musigma.logging.util.TimestampEncoder;
 
 import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetEncoder;
-import java.util.Date;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 
 /**
  * Simple layout that encodes an event in the following format:
  * {@code [Sun Feb 26 12:46:54 CST 2017] Hello, world!\n}
+ *
+ * <p>Events are encoded in chunks through a {@link CharsetEncoder}, so there is no limit on the size of an event when
+ * encoding to a {@link Buffered} destination: whenever the destination fills up, it gets drained and encoding
+ * continues. A surrogate pair split across two chunks is carried over to the next chunk. Malformed and unmappable
+ * characters are replaced like in {@link String#getBytes(Charset)}.</p>
  */
 public class SimpleLayout implements Layout {
 
     private final Charset charset;
     private final ThreadLocal<CharsetEncoder> encoderLocal;
     private final ThreadLocal<CharBuffer> bufferLocal;
+    private final ThreadLocal<LogEventCharSeq> seqLocal = ThreadLocal.withInitial(LogEventCharSeq::new);
+    private final ThreadLocal<FixedDestination> fixedLocal = ThreadLocal.withInitial(FixedDestination::new);
 
     public SimpleLayout(Charset charset) {
         this.charset = charset;
-        this.encoderLocal = ThreadLocal.withInitial(charset::newEncoder);
+        this.encoderLocal = ThreadLocal.withInitial(() -> charset.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE));
         // using direct byte buffers to copy to mmap'd files is a lot faster!
         this.bufferLocal = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(8192).asCharBuffer());
     }
@@ -46,7 +57,7 @@ public class SimpleLayout implements Layout {
     @Override
     public ByteBuffer encode(LogEvent event) {
         CharSequence message = event.getMessage();
-        String timestamp = new Date(event.getTimestamp()).toString();
+        String timestamp = TimestampEncoder.getInstance().format(event.getTimestamp());
         // "[" + timestamp + "] " + message + "\n"
         CharBuffer buf = CharBuffer.allocate(1 + timestamp.length() + 2 + message.length() + 1);
         buf.put('[').put(timestamp).put(']').put(' ');
@@ -57,67 +68,91 @@ public class SimpleLayout implements Layout {
         return charset.encode(buf);
     }
 
+    /**
+     * Encodes the event into the given buffer.
+     *
+     * @throws BufferOverflowException if the encoded event doesn't fit; the buffer may contain a partial event then
+     */
     @Override
     public void encode(LogEvent event, ByteBuffer dst) {
-        CharsetEncoder encoder = encoderLocal.get();
-        encoder.reset();
-        CharSeq seq = new LogEventCharSeq(event);
-        float expectedEncodedSize = seq.length() * encoder.averageBytesPerChar();
-        int destinationSize = dst.remaining();
-        if (destinationSize < expectedEncodedSize) {
-            // TODO: a ByteBufferDestination pattern like in log4j could allow for buffering here
-            throw new UnsupportedOperationException(
-                "Cannot write to destination buffer as it's too small. Expected size: " + expectedEncodedSize + "; destination size: " + destinationSize);
+        FixedDestination destination = fixedLocal.get();
+        destination.buf = dst;
+        try {
+            encode(event, destination);
+        } finally {
+            destination.buf = null;
         }
+    }
 
+    @Override
+    public void encode(LogEvent event, Buffered<ByteBuffer> destination) {
+        CharsetEncoder encoder = encoderLocal.get();
+        encoder.reset();
+        LogEventCharSeq seq = seqLocal.get();
+        seq.set(event);
         CharBuffer buf = bufferLocal.get();
-        // encode CharSeq in CharBuffer-sized chunks (too bad for those poor surrogate pairs)
-        int cap = buf.capacity();
-        int fullChunks = Math.floorDiv(seq.length(), cap);
-        // first, we'll handle all the full-sized chunks
-        for (int i = 0; i < fullChunks; i++) {
-            int offset = i * cap;
-            buf.clear();
-            for (int j = 0; j < cap; j++) {
-                buf.put(seq.charAt(j + offset));
-            }
-            buf.flip();
-            // TODO: same note as above; we could drain the destination buffer and continue writing again
-            if (encoder.encode(buf, dst, false).isOverflow()) {
-                throw new UnsupportedOperationException(new BufferOverflowException());
-            }
-        }
-        // encode last chunk
-        int start = fullChunks * cap;
-        int end = seq.length();
         buf.clear();
-        for (int i = start; i < end; i++) {
-            buf.put(seq.charAt(i));
+        try {
+            ByteBuffer dst = destination.buffer();
+            int length = seq.length();
+            int next = 0;
+            boolean endOfInput;
+            do {
+                // top up the chunk after whatever the last round left over (i.e., half of a surrogate pair)
+                int end = next + Math.min(buf.remaining(), length - next);
+                while (next < end) {
+                    buf.put(seq.charAt(next++));
+                }
+                buf.flip();
+                endOfInput = next == length;
+                CoderResult result;
+                while ((result = encoder.encode(buf, dst, endOfInput)).isOverflow()) {
+                    dst = destination.drain();
+                }
+                assert result.isUnderflow();
+                buf.compact();
+            } while (!endOfInput);
+            while (encoder.flush(dst).isOverflow()) {
+                dst = destination.drain();
+            }
+        } finally {
+            seq.clear();
         }
-        buf.flip();
-        if (encoder.encode(buf, dst, true).isOverflow()) {
-            throw new BufferOverflowException();
+    }
+
+    /**
+     * Destination for encoding into a plain ByteBuffer which can't be drained.
+     */
+    private static class FixedDestination implements Buffered<ByteBuffer> {
+
+        private ByteBuffer buf;
+
+        @Override
+        public ByteBuffer buffer() {
+            return buf;
         }
-        if (encoder.flush(dst).isOverflow()) {
+
+        @Override
+        public ByteBuffer drain() {
             throw new BufferOverflowException();
         }
     }
 
-    @Override
-    public void encode(LogEvent event, Buffered<ByteBuffer> destination) {
-        throw new UnsupportedOperationException();
-    }
-
     private static class LogEventCharSeq implements CharSeq {
 
-        private final String timestamp;
-        private final CharSequence message;
+        private String timestamp;
+        private CharSequence message;
 
-        private LogEventCharSeq(LogEvent event) {
-            timestamp = new Date(event.getTimestamp()).toString();
+        private void set(LogEvent event) {
+            timestamp = TimestampEncoder.getInstance().format(event.getTimestamp());
             message = event.getMessage();
         }
 
+        private void clear() {
+            timestamp = null;
+            message = null;
+        }
+
         @Override
         public int length() {
             return 4 + timestamp.length() + message.length();
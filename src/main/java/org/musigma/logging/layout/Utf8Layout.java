@@ -0,0 +1,70 @@
+/*
+ * Copyright 2017 Matt Sicker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.musigma.logging.layout;
+
+import org.musigma.logging.impl.LogEvent;
+import org.musigma.logging.util.Buffered;
+import org.musigma.logging.util.CharEncoding;
+import org.musigma.logging.util.TimestampEncoder;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Same format as {@link SimpleLayout}, but specialized for UTF-8. Messages are encoded straight from the
+ * {@link CharSequence} into the destination buffer by {@link CharEncoding} without going through a CharsetEncoder.
+ */
+public class Utf8Layout implements Layout {
+
+    private final TimestampEncoder timestampEncoder = TimestampEncoder.getInstance();
+
+    @Override
+    public ByteBuffer encode(LogEvent event) {
+        long timestamp = event.getTimestamp();
+        CharSequence message = event.getMessage();
+        ByteBuffer dst = ByteBuffer.allocate(4 + timestampEncoder.length(timestamp) + CharEncoding.utf8Length(message));
+        encode(event, dst);
+        dst.flip();
+        return dst;
+    }
+
+    @Override
+    public void encode(LogEvent event, ByteBuffer dst) {
+        long timestamp = event.getTimestamp();
+        CharSequence message = event.getMessage();
+        int prefixLength = 3 + timestampEncoder.length(timestamp);
+        // only count the exact length when the worst case might not fit
+        if (prefixLength + 3 * message.length() + 1 > dst.remaining() &&
+            prefixLength + CharEncoding.utf8Length(message) + 1 > dst.remaining()) {
+            throw new BufferOverflowException();
+        }
+        dst.put((byte) '[');
+        timestampEncoder.encode(timestamp, dst);
+        dst.put((byte) ']').put((byte) ' ');
+        CharEncoding.encodeUtf8(message, dst);
+        dst.put((byte) '\n');
+    }
+
+    @Override
+    public void encode(LogEvent event, Buffered<ByteBuffer> destination) {
+        CharEncoding.put((byte) '[', destination);
+        timestampEncoder.encode(event.getTimestamp(), destination);
+        CharEncoding.put((byte) ']', destination);
+        CharEncoding.put((byte) ' ', destination);
+        CharEncoding.encodeUtf8(event.getMessage(), destination);
+        CharEncoding.put((byte) '\n', destination);
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2017 Matt Sicker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.musigma.logging.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Blocks the consumer on a condition that producers signal after publishing. Uses no CPU while idle and wakes up as
+ * soon as the consumer thread is scheduled again, but every idle-to-busy transition costs the producer a lock
+ * acquisition and an unpark. Producers only touch the lock while the consumer is actually waiting.
+ */
+public class BlockingWaitStrategy implements WaitStrategy {
+
+    // publishing doesn't include a store-load barrier, so a signal can be missed in a narrow window; this bounds it
+    private static final long TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final AtomicInteger waiters = new AtomicInteger();
+
+    @Override
+    public void waitFor(RingBuffer<?> buffer, BooleanSupplier cancelled) throws InterruptedException {
+        if (!buffer.isEmpty() || cancelled.getAsBoolean()) {
+            return;
+        }
+        lock.lockInterruptibly();
+        waiters.incrementAndGet();
+        try {
+            while (buffer.isEmpty() && !cancelled.getAsBoolean()) {
+                notEmpty.awaitNanos(TIMEOUT_NANOS);
+            }
+        } finally {
+            waiters.decrementAndGet();
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void signal() {
+        if (waiters.get() > 0) {
+            lock.lock();
+            try {
+                notEmpty.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2017 Matt Sicker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.musigma.logging.util;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Spins on the buffer without ever giving up the CPU. Lowest wake-up latency, but burns an entire core even while
+ * idle, so this only makes sense when the consumer thread can be pinned to a core of its own.
+ */
+public class BusySpinWaitStrategy implements WaitStrategy {
+
+    @Override
+    public void waitFor(RingBuffer<?> buffer, BooleanSupplier cancelled) throws InterruptedException {
+        while (buffer.isEmpty() && !cancelled.getAsBoolean()) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    @Override
+    public void signal() {
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright 2017 Matt Sicker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.musigma.logging.util;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Hand-rolled UTF-8 and ISO-8859-1 encoders that write straight from a {@link CharSequence} into a
+ * {@link ByteBuffer}. Unlike a {@link java.nio.charset.CharsetEncoder}, these don't need the characters to be copied
+ * into a CharBuffer first, and they have a fast path for runs of ASCII. Malformed surrogates and (for ISO-8859-1)
+ * unmappable characters are replaced with {@code '?'} just like {@link String#getBytes(java.nio.charset.Charset)}
+ * does.
+ */
+public final class CharEncoding {
+
+    private static final byte REPLACEMENT = '?';
+    // direct buffers have no array to encode into, so longer ASCII strings are encoded into this first and then put
+    // into the buffer in bulk
+    private static final int SCRATCH_SIZE = 512;
+    private static final int MIN_BULK_LENGTH = 16;
+    private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[SCRATCH_SIZE]);
+
+    /**
+     * Encodes characters {@code [from, to)} as UTF-8 until the destination is full. A character is only written if
+     * all of its bytes fit.
+     *
+     * @return index of the next character to encode; equal to {@code to} if everything was encoded
+     */
+    public static int encodeUtf8(CharSequence src, int from, int to, ByteBuffer dst) {
+        int i = encodeAsciiRun(src, from, to, dst);
+        while (i < to) {
+            char c = src.charAt(i);
+            if (c < 0x80) {
+                if (!dst.hasRemaining()) {
+                    break;
+                }
+                dst.put((byte) c);
+                i = encodeAsciiRun(src, i + 1, to, dst);
+            } else if (c < 0x800) {
+                if (dst.remaining() < 2) {
+                    break;
+                }
+                dst.put((byte) (0xc0 | c >> 6));
+                dst.put((byte) (0x80 | c & 0x3f));
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(src.charAt(i + 1))) {
+                    if (dst.remaining() < 4) {
+                        break;
+                    }
+                    int cp = Character.toCodePoint(c, src.charAt(i + 1));
+                    dst.put((byte) (0xf0 | cp >> 18));
+                    dst.put((byte) (0x80 | cp >> 12 & 0x3f));
+                    dst.put((byte) (0x80 | cp >> 6 & 0x3f));
+                    dst.put((byte) (0x80 | cp & 0x3f));
+                    i += 2;
+                } else {
+                    if (!dst.hasRemaining()) {
+                        break;
+                    }
+                    dst.put(REPLACEMENT);
+                    i++;
+                }
+            } else {
+                if (dst.remaining() < 3) {
+                    break;
+                }
+                dst.put((byte) (0xe0 | c >> 12));
+                dst.put((byte) (0x80 | c >> 6 & 0x3f));
+                dst.put((byte) (0x80 | c & 0x3f));
+                i++;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Encodes characters {@code [from, to)} as ISO-8859-1 until the destination is full.
+     *
+     * @return index of the next character to encode; equal to {@code to} if everything was encoded
+     */
+    public static int encodeLatin1(CharSequence src, int from, int to, ByteBuffer dst) {
+        int i = from;
+        int end = Math.min(to, i + dst.remaining());
+        while (i < end) {
+            char c = src.charAt(i);
+            if (c <= 0xff) {
+                dst.put((byte) c);
+                i++;
+            } else {
+                dst.put(REPLACEMENT);
+                // a surrogate pair is a single unmappable character
+                if (Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(src.charAt(i + 1))) {
+                    i++;
+                    end = Math.min(end + 1, to);
+                }
+                i++;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Encodes characters {@code [from, to)} as ASCII until the destination is full. Non-ASCII characters are mangled
+     * by casting them to a {@code byte}.
+     *
+     * @return index of the next character to encode; equal to {@code to} if everything was encoded
+     */
+    @SuppressWarnings("deprecation")
+    public static int encodeAscii(CharSequence src, int from, int to, ByteBuffer dst) {
+        int end = Math.min(to, from + dst.remaining());
+        if (dst.hasArray()) {
+            byte[] array = dst.array();
+            int offset = dst.arrayOffset() + dst.position();
+            if (src instanceof String) {
+                // copies the low byte of each char in bulk
+                ((String) src).getBytes(from, end, array, offset);
+            } else {
+                for (int i = from; i < end; i++) {
+                    array[offset++] = (byte) src.charAt(i);
+                }
+            }
+            dst.position(dst.position() + end - from);
+        } else if (end - from >= MIN_BULK_LENGTH) {
+            byte[] scratch = SCRATCH.get();
+            for (int i = from; i < end; ) {
+                int length = Math.min(scratch.length, end - i);
+                if (src instanceof String) {
+                    ((String) src).getBytes(i, i + length, scratch, 0);
+                } else {
+                    for (int j = 0; j < length; j++) {
+                        scratch[j] = (byte) src.charAt(i + j);
+                    }
+                }
+                dst.put(scratch, 0, length);
+                i += length;
+            }
+        } else {
+            for (int i = from; i < end; i++) {
+                dst.put((byte) src.charAt(i));
+            }
+        }
+        return end;
+    }
+
+    // stops at the first non-ASCII character
+    private static int encodeAsciiRun(CharSequence src, int from, int to, ByteBuffer dst) {
+        int i = from;
+        int end = Math.min(to, i + dst.remaining());
+        if (dst.hasArray()) {
+            byte[] array = dst.array();
+            int offset = dst.arrayOffset() + dst.position() - i;
+            char c;
+            while (i < end && (c = src.charAt(i)) < 0x80) {
+                array[offset + i] = (byte) c;
+                i++;
+            }
+            dst.position(dst.position() + i - from);
+        } else {
+            char c;
+            while (i < end && (c = src.charAt(i)) < 0x80) {
+                dst.put((byte) c);
+                i++;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Encodes the whole sequence as UTF-8, draining the destination whenever the next character doesn't fit.
+     */
+    public static void encodeUtf8(CharSequence src, Buffered<ByteBuffer> destination) {
+        int length = src.length();
+        ByteBuffer buf = destination.buffer();
+        int i = encodeUtf8(src, 0, length, buf);
+        while (i < length) {
+            buf = destination.drain();
+            i = encodeUtf8(src, i, length, buf);
+        }
+    }
+
+    /**
+     * Encodes the whole sequence as ASCII, filling the destination completely before each drain.
+     */
+    public static void encodeAscii(CharSequence src, Buffered<ByteBuffer> destination) {
+        int length = src.length();
+        ByteBuffer buf = destination.buffer();
+        int i = encodeAscii(src, 0, length, buf);
+        while (i < length) {
+            buf = destination.drain();
+            i = encodeAscii(src, i, length, buf);
+        }
+    }
+
+    /**
+     * Encodes the whole sequence as ISO-8859-1, draining the destination whenever it fills up.
+     */
+    public static void encodeLatin1(CharSequence src, Buffered<ByteBuffer> destination) {
+        int length = src.length();
+        ByteBuffer buf = destination.buffer();
+        int i = encodeLatin1(src, 0, length, buf);
+        while (i < length) {
+            buf = destination.drain();
+            i = encodeLatin1(src, i, length, buf);
+        }
+    }
+
+    /**
+     * Encodes the whole sequence as UTF-8.
+     *
+     * @throws BufferOverflowException if the destination is too small; it may contain part of the sequence then
+     */
+    public static void encodeUtf8(CharSequence src, ByteBuffer dst) {
+        if (encodeUtf8(src, 0, src.length(), dst) < src.length()) {
+            throw new BufferOverflowException();
+        }
+    }
+
+    /**
+     * Encodes the whole sequence as ISO-8859-1.
+     *
+     * @throws BufferOverflowException if the destination is too small; it may contain part of the sequence then
+     */
+    public static void encodeLatin1(CharSequence src, ByteBuffer dst) {
+        if (encodeLatin1(src, 0, src.length(), dst) < src.length()) {
+            throw new BufferOverflowException();
+        }
+    }
+
+    /**
+     * Returns the number of bytes needed to encode the sequence as UTF-8.
+     */
+    public static int utf8Length(CharSequence src) {
+        int length = src.length();
+        int bytes = length;
+        for (int i = 0; i < length; i++) {
+            char c = src.charAt(i);
+            if (c >= 0x80) {
+                if (c < 0x800) {
+                    bytes++;
+                } else if (Character.isHighSurrogate(c) && i + 1 < length &&
+                    Character.isLowSurrogate(src.charAt(i + 1))) {
+                    // two chars, four bytes
+                    bytes += 2;
+                    i++;
+                } else if (!Character.isSurrogate(c)) {
+                    bytes += 2;
+                }
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Writes a single byte, draining the destination first if it is full.
+     */
+    public static void put(byte b, Buffered<ByteBuffer> destination) {
+        ByteBuffer buf = destination.buffer();
+        if (!buf.hasRemaining()) {
+            buf = destination.drain();
+        }
+        buf.put(b);
+    }
+
+    private CharEncoding() {
+    }
+}
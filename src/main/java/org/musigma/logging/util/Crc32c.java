@@ -0,0 +1,168 @@
+/*
+ * Copyright 2017 Matt Sicker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.musigma.logging.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import java.util.zip.Checksum;
+
+import static java.lang.invoke.MethodType.methodType;
+
+/**
+ * CRC-32C (Castagnoli) checksums. On Java 9+, {@link #newChecksum()} returns the JDK's {@code java.util.zip.CRC32C},
+ * which uses the CRC32 instructions of the CPU where available; on Java 8, it falls back to this class, a pure Java
+ * slicing-by-8 implementation.
+ */
+public final class Crc32c implements Checksum {
+
+    private static final int POLYNOMIAL = 0x82f63b78; // reversed Castagnoli polynomial
+    // eight tables of 256 entries for processing eight bytes at a time
+    private static final int[] TABLE = table();
+
+    // ()Checksum, or null before Java 9
+    private static final MethodHandle CONSTRUCTOR;
+    // (Checksum, ByteBuffer)void, or null before Java 9
+    private static final MethodHandle UPDATE_BUFFER;
+
+    static {
+        MethodHandle constructor = null;
+        MethodHandle updateBuffer = null;
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            Class<?> crc32c = Class.forName("java.util.zip.CRC32C");
+            constructor = lookup.findConstructor(crc32c, methodType(void.class))
+                .asType(methodType(Checksum.class));
+            updateBuffer = lookup.findVirtual(Checksum.class, "update", methodType(void.class, ByteBuffer.class));
+        } catch (ReflectiveOperationException | RuntimeException ignored) {
+            // not available before Java 9
+            constructor = null;
+            updateBuffer = null;
+        }
+        CONSTRUCTOR = constructor;
+        UPDATE_BUFFER = updateBuffer;
+    }
+
+    private int crc = ~0;
+
+    /**
+     * Creates a new CRC-32C checksum, using the JDK implementation if there is one.
+     */
+    public static Checksum newChecksum() {
+        if (CONSTRUCTOR != null) {
+            try {
+                return (Checksum) CONSTRUCTOR.invokeExact();
+            } catch (Throwable t) {
+                throw new IllegalStateException(t);
+            }
+        }
+        return new Crc32c();
+    }
+
+    /**
+     * Indicates whether {@link #newChecksum()} returns the JDK implementation.
+     */
+    public static boolean isJdkImplementation() {
+        return CONSTRUCTOR != null;
+    }
+
+    /**
+     * Updates a checksum created by {@link #newChecksum()} with the remaining bytes of the given buffer, advancing its
+     * position to its limit. This is {@code Checksum.update(ByteBuffer)} for Java 8.
+     */
+    public static void update(Checksum checksum, ByteBuffer src) {
+        if (checksum instanceof Crc32c) {
+            ((Crc32c) checksum).update(src);
+            return;
+        }
+        try {
+            UPDATE_BUFFER.invokeExact(checksum, src);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    @Override
+    public void update(int b) {
+        crc = (crc >>> 8) ^ TABLE[(crc ^ b) & 0xff];
+    }
+
+    @Override
+    public void update(byte[] b, int off, int len) {
+        int c = crc;
+        int i = off;
+        int end = off + len;
+        for (; i + 8 <= end; i += 8) {
+            c ^= (b[i] & 0xff) | (b[i + 1] & 0xff) << 8 | (b[i + 2] & 0xff) << 16 | (b[i + 3] & 0xff) << 24;
+            c = TABLE[7 * 256 + (c & 0xff)] ^ TABLE[6 * 256 + (c >>> 8 & 0xff)] ^
+                TABLE[5 * 256 + (c >>> 16 & 0xff)] ^ TABLE[4 * 256 + (c >>> 24)] ^
+                TABLE[3 * 256 + (b[i + 4] & 0xff)] ^ TABLE[2 * 256 + (b[i + 5] & 0xff)] ^
+                TABLE[256 + (b[i + 6] & 0xff)] ^ TABLE[b[i + 7] & 0xff];
+        }
+        for (; i < end; i++) {
+            c = (c >>> 8) ^ TABLE[(c ^ b[i]) & 0xff];
+        }
+        crc = c;
+    }
+
+    /**
+     * Updates the checksum with the remaining bytes of the given buffer, advancing its position to its limit.
+     */
+    public void update(ByteBuffer src) {
+        if (src.hasArray()) {
+            update(src.array(), src.arrayOffset() + src.position(), src.remaining());
+            src.position(src.limit());
+            return;
+        }
+        byte[] chunk = new byte[Math.min(src.remaining(), 8192)];
+        while (src.hasRemaining()) {
+            int length = Math.min(src.remaining(), chunk.length);
+            src.get(chunk, 0, length);
+            update(chunk, 0, length);
+        }
+    }
+
+    @Override
+    public long getValue() {
+        return ~crc & 0xffffffffL;
+    }
+
+    @Override
+    public void reset() {
+        crc = ~0;
+    }
+
+    private static int[] table() {
+        int[] table = new int[8 * 256];
+        for (int n = 0; n < 256; n++) {
+            int c = n;
+            for (int k = 0; k < 8; k++) {
+                c = (c & 1) != 0 ? (c >>> 1) ^ POLYNOMIAL : c >>> 1;
+            }
+            table[n] = c;
+        }
+        for (int n = 0; n < 256; n++) {
+            int c = table[n];
+            for (int k = 1; k < 8; k++) {
+                c = (c >>> 8) ^ table[c & 0xff];
+                table[k * 256 + n] = c;
+            }
+        }
+        return table;
+    }
+}
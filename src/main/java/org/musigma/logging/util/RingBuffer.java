@@ -0,0 +1,248 @@
+/*
+ * Copyright 2017 Matt Sicker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.musigma.logging.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Bounded multi-producer/single-consumer ring buffer. All slots are allocated up front and the capacity is rounded up
+ * to a power of two (of at least two) so that sequences can be mapped to slots with a mask instead of a modulo.
+ *
+ * <p>Each slot carries its own sequence number (as in Dmitry Vyukov's bounded queue). A producer claims a sequence with
+ * a single CAS on the producer cursor, writes the slot, and then publishes it by advancing the slot's sequence. The
+ * consumer claims a run of published slots with a single CAS on the consumer cursor, reads them in order, and hands
+ * each slot back to producers by advancing its sequence by one lap. Neither side allocates, and producers never wait
+ * on the consumer unless the buffer is full.</p>
+ *
+ * <p>There is meant to be a single consumer calling {@link #drain(Consumer, int)}, but since the consumer cursor is
+ * advanced with a CAS, producers may also call {@link #poll()} to discard the oldest element when the buffer is
+ * full.</p>
+ *
+ * <p>A buffer may also be created with a factory that preallocates an element for every slot. Producers then
+ * {@linkplain #get(long) fill in} the element of the slot they claimed instead of {@linkplain #set(long, Object)
+ * replacing} it, and elements stay in their slots after being consumed.</p>
+ *
+ * @param <E> type of elements held in this buffer
+ */
+public final class RingBuffer<E> {
+
+    private final int capacity;
+    private final int mask;
+    private final Object[] entries;
+    private final boolean preallocated;
+    // sequence number per slot: equal to the next producer sequence when free, one more than that when published
+    private final AtomicLongArray sequences;
+    private final Sequence producerCursor = new Sequence(0);
+    private final Sequence consumerCursor = new Sequence(0);
+
+    public RingBuffer(int capacity) {
+        this(capacity, null);
+    }
+
+    /**
+     * Creates a buffer whose slots are filled in up front by the given factory.
+     */
+    public RingBuffer(int capacity, Supplier<? extends E> factory) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        // with a single slot, a published slot would look like a free slot of the next lap
+        this.capacity = capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.entries = new Object[this.capacity];
+        this.sequences = new AtomicLongArray(this.capacity);
+        this.preallocated = factory != null;
+        for (int i = 0; i < this.capacity; i++) {
+            if (preallocated) {
+                entries[i] = factory.get();
+            }
+            sequences.lazySet(i, i);
+        }
+    }
+
+    /**
+     * Attempts to claim the next free slot.
+     *
+     * @return the claimed sequence or {@code -1} if the buffer is full
+     */
+    public long tryClaim() {
+        while (true) {
+            long sequence = producerCursor.get();
+            long available = sequences.get(index(sequence));
+            if (available == sequence) {
+                if (producerCursor.compareAndSet(sequence, sequence + 1)) {
+                    return sequence;
+                }
+            } else if (available < sequence) {
+                // the slot from the previous lap hasn't been consumed yet
+                return -1;
+            }
+            // otherwise another producer beat us to this sequence; try the next one
+        }
+    }
+
+    /**
+     * Stores an element in a claimed slot. Must be followed by {@link #publish(long)}.
+     */
+    public void set(long sequence, E element) {
+        entries[index(sequence)] = element;
+    }
+
+    /**
+     * Gets the element of a claimed slot. Mainly useful for preallocated buffers.
+     */
+    @SuppressWarnings("unchecked")
+    public E get(long sequence) {
+        return (E) entries[index(sequence)];
+    }
+
+    /**
+     * Makes a claimed slot visible to the consumer.
+     */
+    public void publish(long sequence) {
+        sequences.lazySet(index(sequence), sequence + 1);
+    }
+
+    /**
+     * Attempts to add an element to this buffer.
+     *
+     * @return {@code true} if the element was added or {@code false} if the buffer is full
+     */
+    public boolean offer(E element) {
+        long sequence = tryClaim();
+        if (sequence < 0) {
+            return false;
+        }
+        set(sequence, element);
+        publish(sequence);
+        return true;
+    }
+
+    /**
+     * Removes the oldest element from this buffer. For preallocated buffers, the slot is handed back to producers
+     * before this returns, so the returned element may already be getting reused.
+     *
+     * @return the oldest element or {@code null} if nothing has been published
+     */
+    public E poll() {
+        while (true) {
+            long sequence = consumerCursor.get();
+            int index = index(sequence);
+            if (sequences.get(index) != sequence + 1) {
+                return null;
+            }
+            if (consumerCursor.compareAndSet(sequence, sequence + 1)) {
+                @SuppressWarnings("unchecked")
+                E element = (E) entries[index];
+                clear(index);
+                release(sequence);
+                return element;
+            }
+        }
+    }
+
+    /**
+     * Removes up to {@code limit} published elements and passes them to the given handler in order. Only the consumer
+     * thread may call this. Each slot is handed back to producers once the handler has returned.
+     *
+     * @return number of elements drained
+     */
+    public int drain(Consumer<? super E> handler, int limit) {
+        long start;
+        int count;
+        do {
+            start = consumerCursor.get();
+            count = 0;
+            while (count < limit && sequences.get(index(start + count)) == start + count + 1) {
+                count++;
+            }
+            if (count == 0) {
+                return 0;
+            }
+        } while (!consumerCursor.compareAndSet(start, start + count));
+        int i = 0;
+        try {
+            for (; i < count; i++) {
+                long sequence = start + i;
+                int index = index(sequence);
+                @SuppressWarnings("unchecked")
+                E element = (E) entries[index];
+                clear(index);
+                handler.accept(element);
+                release(sequence);
+            }
+        } finally {
+            // if the handler failed, give up on the rest of the run so that producers don't wedge
+            for (; i < count; i++) {
+                clear(index(start + i));
+                release(start + i);
+            }
+        }
+        return count;
+    }
+
+    private void clear(int index) {
+        if (!preallocated) {
+            entries[index] = null;
+        }
+    }
+
+    private void release(long sequence) {
+        sequences.lazySet(index(sequence), sequence + capacity);
+    }
+
+    private int index(long sequence) {
+        return (int) sequence & mask;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns an estimate of the number of claimed but unconsumed slots.
+     */
+    public int size() {
+        long consumed = consumerCursor.get();
+        long produced = producerCursor.get();
+        return (int) Math.max(0, Math.min(capacity, produced - consumed));
+    }
+
+    /**
+     * Indicates whether the next slot for the consumer has been published yet.
+     */
+    public boolean isEmpty() {
+        long sequence = consumerCursor.get();
+        return sequences.get(index(sequence)) != sequence + 1;
+    }
+
+    /**
+     * Returns the next sequence a producer would claim. Everything before it has at least been claimed.
+     */
+    public long producerSequence() {
+        return producerCursor.get();
+    }
+
+    /**
+     * Returns the next sequence the consumer will claim. Everything before it has been claimed by the consumer or
+     * discarded, though the consumer may still be processing the last run it claimed.
+     */
+    public long consumerSequence() {
+        return consumerCursor.get();
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2017 Matt Sicker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.musigma.logging.util;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+// padding fields are split across the class hierarchy as the JVM is free to reorder fields within a single class
+abstract class LhsPadding {
+    protected long p1, p2, p3, p4, p5, p6, p7;
+}
+
+abstract class Value extends LhsPadding {
+    protected volatile long value;
+}
+
+abstract class RhsPadding extends Value {
+    protected long p9, p10, p11, p12, p13, p14, p15;
+}
+
+/**
+ * Cache line padded sequence counter. Sequences that are updated by different threads (such as the producer and
+ * consumer cursors of a {@link RingBuffer}) would otherwise likely share a cache line and ping-pong between cores on
+ * every update. The layout idea is borrowed from the LMAX Disruptor.
+ */
+public final class Sequence extends RhsPadding {
+
+    private static final AtomicLongFieldUpdater<Value> UPDATER =
+        AtomicLongFieldUpdater.newUpdater(Value.class, "value");
+
+    public Sequence(long initialValue) {
+        UPDATER.lazySet(this, initialValue);
+    }
+
+    public long get() {
+        return value;
+    }
+
+    public void set(long value) {
+        this.value = value;
+    }
+
+    /**
+     * Sets the value without a store-load barrier. Other threads will see the new value eventually, and any writes
+     * made before this call will be visible to threads that read the new value.
+     */
+    public void lazySet(long value) {
+        UPDATER.lazySet(this, value);
+    }
+
+    public boolean compareAndSet(long expect, long update) {
+        return UPDATER.compareAndSet(this, expect, update);
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(value);
+    }
+}
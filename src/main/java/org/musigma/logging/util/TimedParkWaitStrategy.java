@@ -0,0 +1,53 @@
+/*
+ * Copyright 2017 Matt Sicker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.musigma.logging.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Polls the buffer and parks for a fixed interval between polls. Uses next to no CPU while idle, but a newly published
+ * element may wait up to the park interval (plus timer slack) before the consumer notices it.
+ */
+public class TimedParkWaitStrategy implements WaitStrategy {
+
+    private static final long DEFAULT_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final long parkNanos;
+
+    public TimedParkWaitStrategy() {
+        this(DEFAULT_PARK_NANOS);
+    }
+
+    public TimedParkWaitStrategy(long parkNanos) {
+        this.parkNanos = parkNanos;
+    }
+
+    @Override
+    public void waitFor(RingBuffer<?> buffer, BooleanSupplier cancelled) throws InterruptedException {
+        while (buffer.isEmpty() && !cancelled.getAsBoolean()) {
+            LockSupport.parkNanos(this, parkNanos);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    @Override
+    public void signal() {
+    }
+}
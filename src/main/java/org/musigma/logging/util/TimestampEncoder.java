@@ -0,0 +1,154 @@
+/*
+ * Copyright 2017 Matt Sicker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.musigma.logging.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+/**
+ * Formats millisecond timestamps the same way as {@link Date#toString()} (e.g., {@code Sun Feb 26 12:46:54 CST 2017})
+ * without allocating on every call. That format only has second precision, so the formatted text of the most recent
+ * second is cached. When the second changes, only the two seconds digits are patched into a copy of the cached text;
+ * the full (and expensive) Date formatting only runs when the minute changes.
+ *
+ * <p>The cache is an immutable snapshot published through a volatile field, so this class is safe to share between
+ * threads. Two threads racing on a new second may both compute the same snapshot, which is harmless.</p>
+ */
+public final class TimestampEncoder {
+
+    private static final TimestampEncoder INSTANCE = new TimestampEncoder();
+
+    // offset of the seconds digits in "EEE MMM dd HH:mm:ss zzz yyyy"
+    private static final int SECONDS_OFFSET = 17;
+
+    private volatile CachedTimestamp cached = formatEpochSecond(0);
+
+    public static TimestampEncoder getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the formatted timestamp. The returned string is shared for all timestamps within the same second.
+     */
+    public String format(long timestamp) {
+        return lookup(timestamp).text;
+    }
+
+    public void formatTo(long timestamp, StringBuilder buf) {
+        buf.append(lookup(timestamp).text);
+    }
+
+    /**
+     * Returns the length in bytes (and chars) of the formatted timestamp.
+     */
+    public int length(long timestamp) {
+        return lookup(timestamp).bytes.length;
+    }
+
+    /**
+     * Writes the formatted timestamp as ASCII bytes.
+     *
+     * @throws java.nio.BufferOverflowException if there isn't enough room left in the destination buffer
+     */
+    public void encode(long timestamp, ByteBuffer dst) {
+        dst.put(lookup(timestamp).bytes);
+    }
+
+    /**
+     * Writes the formatted timestamp as ASCII bytes, draining the destination whenever it fills up.
+     */
+    public void encode(long timestamp, Buffered<ByteBuffer> destination) {
+        byte[] bytes = lookup(timestamp).bytes;
+        int offset = 0;
+        ByteBuffer buf = destination.buffer();
+        while (offset < bytes.length) {
+            if (!buf.hasRemaining()) {
+                buf = destination.drain();
+            }
+            int chunk = Math.min(bytes.length - offset, buf.remaining());
+            buf.put(bytes, offset, chunk);
+            offset += chunk;
+        }
+    }
+
+    private CachedTimestamp lookup(long timestamp) {
+        long epochSecond = Math.floorDiv(timestamp, 1000);
+        CachedTimestamp current = cached;
+        if (current.epochSecond == epochSecond) {
+            return current;
+        }
+        CachedTimestamp next = current.withEpochSecond(epochSecond);
+        if (next == null) {
+            next = formatEpochSecond(epochSecond);
+        }
+        cached = next;
+        return next;
+    }
+
+    private static CachedTimestamp formatEpochSecond(long epochSecond) {
+        String text = new Date(epochSecond * 1000).toString();
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        int displayedSecond = -1;
+        if (bytes.length > SECONDS_OFFSET + 1 && bytes[SECONDS_OFFSET - 1] == ':' &&
+            isDigit(bytes[SECONDS_OFFSET]) && isDigit(bytes[SECONDS_OFFSET + 1])) {
+            displayedSecond = (bytes[SECONDS_OFFSET] - '0') * 10 + bytes[SECONDS_OFFSET + 1] - '0';
+        }
+        return new CachedTimestamp(epochSecond, epochSecond, displayedSecond, bytes, text);
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static final class CachedTimestamp {
+        // second this snapshot represents
+        private final long epochSecond;
+        // second that was last fully formatted, and the seconds field it was displayed with (-1 if unknown)
+        private final long baseEpochSecond;
+        private final int baseDisplayedSecond;
+        private final byte[] bytes;
+        private final String text;
+
+        private CachedTimestamp(long epochSecond, long baseEpochSecond, int baseDisplayedSecond, byte[] bytes,
+                                String text) {
+            this.epochSecond = epochSecond;
+            this.baseEpochSecond = baseEpochSecond;
+            this.baseDisplayedSecond = baseDisplayedSecond;
+            this.bytes = bytes;
+            this.text = text;
+        }
+
+        /**
+         * Patches the seconds digits for another second in the same minute, or returns {@code null} if the minute (or
+         * anything else in the text) may have changed.
+         */
+        private CachedTimestamp withEpochSecond(long epochSecond) {
+            if (baseDisplayedSecond < 0) {
+                return null;
+            }
+            long displayedSecond = baseDisplayedSecond + epochSecond - baseEpochSecond;
+            if (displayedSecond < 0 || displayedSecond > 59) {
+                return null;
+            }
+            byte[] patched = bytes.clone();
+            patched[SECONDS_OFFSET] = (byte) ('0' + displayedSecond / 10);
+            patched[SECONDS_OFFSET + 1] = (byte) ('0' + displayedSecond % 10);
+            return new CachedTimestamp(epochSecond, baseEpochSecond, baseDisplayedSecond, patched,
+                new String(patched, StandardCharsets.US_ASCII));
+        }
+    }
+}
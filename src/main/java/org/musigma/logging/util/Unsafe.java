@@ -15,36 +15,72 @@
  */
 package org.musigma.logging.util;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
-import java.security.AccessController;
-import java.security.PrivilegedActionException;
-import java.security.PrivilegedExceptionAction;
+
+import static java.lang.invoke.MethodType.methodType;
 
 /**
  * Provides access to JDK-internals that should really have a public API.
  */
 public final class Unsafe {
 
+    // (ByteBuffer)void, or null if unmapping isn't supported on this JVM
+    private static final MethodHandle UNMAPPER = findUnmapper();
+
     /**
-     * Unmaps a {@link MappedByteBuffer}. Without using this, an mmap buffer will stay in memory until program exit!
+     * Unmaps a {@link MappedByteBuffer}. Without using this, an mmap buffer will stay in memory until it gets garbage
+     * collected! The buffer must not be accessed anymore afterwards, or the JVM may crash. Does nothing if the JVM
+     * doesn't support unmapping.
      *
      * @param buf mmap buffer to unmap
-     * @throws PrivilegedActionException if unable to access the Cleaner internals of MappedByteBuffer
      */
     public static void unmap(MappedByteBuffer buf) {
+        if (UNMAPPER == null) {
+            return;
+        }
         try {
-            AccessController.doPrivileged((PrivilegedExceptionAction<Void>) () -> {
-                Method getCleaner = buf.getClass().getMethod("cleaner");
-                getCleaner.setAccessible(true);
-                Object cleaner = getCleaner.invoke(buf);
-                Method clean = cleaner.getClass().getMethod("clean");
-                clean.invoke(cleaner);
-                return null;
-            });
-        } catch (PrivilegedActionException e) {
+            UNMAPPER.invokeExact((ByteBuffer) buf);
+        } catch (Throwable t) {
             // well isn't that a shame? now we're going to leak memory
+            t.printStackTrace();
+        }
+    }
+
+    /**
+     * Indicates whether {@link #unmap(MappedByteBuffer)} actually unmaps buffers on this JVM.
+     */
+    public static boolean isUnmapSupported() {
+        return UNMAPPER != null;
+    }
+
+    private static MethodHandle findUnmapper() {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            // Java 9+: sun.misc.Unsafe.invokeCleaner(ByteBuffer)
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            MethodHandle invokeCleaner = lookup.findVirtual(unsafeClass, "invokeCleaner",
+                methodType(void.class, ByteBuffer.class));
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            return invokeCleaner.bindTo(theUnsafe.get(null));
+        } catch (ReflectiveOperationException | RuntimeException ignored) {
+            // not available before Java 9
+        }
+        try {
+            // Java 8: ((sun.nio.ch.DirectBuffer) buf).cleaner().clean()
+            Class<?> directBuffer = Class.forName("sun.nio.ch.DirectBuffer");
+            Method cleanerMethod = directBuffer.getMethod("cleaner");
+            MethodHandle cleaner = lookup.unreflect(cleanerMethod);
+            MethodHandle clean = lookup.findVirtual(cleanerMethod.getReturnType(), "clean", methodType(void.class));
+            return MethodHandles.filterReturnValue(cleaner, clean).asType(methodType(void.class, ByteBuffer.class));
+        } catch (ReflectiveOperationException | RuntimeException e) {
             e.printStackTrace();
+            return null;
         }
     }
 
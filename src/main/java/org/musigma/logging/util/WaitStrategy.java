@@ -0,0 +1,39 @@
+/*
+ * Copyright 2017 Matt Sicker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.musigma.logging.util;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Strategy for how the consumer of a {@link RingBuffer} waits for producers to publish something. The available
+ * strategies trade CPU usage while idle against how quickly the consumer notices a newly published element.
+ */
+public interface WaitStrategy {
+
+    /**
+     * Waits until the given buffer might have something to consume or until {@code cancelled} returns {@code true}.
+     * Implementations may return early, so callers must check the buffer again afterwards.
+     *
+     * @throws InterruptedException if the consumer thread was interrupted while waiting
+     */
+    void waitFor(RingBuffer<?> buffer, BooleanSupplier cancelled) throws InterruptedException;
+
+    /**
+     * Notifies a waiting consumer that something was published or that it was cancelled. Called by producers after
+     * every publish, so this should be as cheap as possible for strategies that don't need it.
+     */
+    void signal();
+}
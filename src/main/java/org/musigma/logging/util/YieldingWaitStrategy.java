@@ -0,0 +1,56 @@
+/*
+ * Copyright 2017 Matt Sicker
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.musigma.logging.util;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Spins on the buffer for a number of tries and then falls back to {@link Thread#yield()}. Close to busy spinning in
+ * wake-up latency, but lets other runnable threads use the core while idle.
+ */
+public class YieldingWaitStrategy implements WaitStrategy {
+
+    private static final int DEFAULT_SPIN_TRIES = 100;
+
+    private final int spinTries;
+
+    public YieldingWaitStrategy() {
+        this(DEFAULT_SPIN_TRIES);
+    }
+
+    public YieldingWaitStrategy(int spinTries) {
+        this.spinTries = spinTries;
+    }
+
+    @Override
+    public void waitFor(RingBuffer<?> buffer, BooleanSupplier cancelled) throws InterruptedException {
+        int tries = 0;
+        while (buffer.isEmpty() && !cancelled.getAsBoolean()) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (tries < spinTries) {
+                tries++;
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    @Override
+    public void signal() {
+    }
+}